@@ -90,6 +90,7 @@ public class Flickr {
     private PhotosInterface photosInterface;
     private PhotosetsCommentsInterface photosetsCommentsInterface;
     private PhotosetsInterface photosetsInterface;
+    private StreamingInterface streamingInterface;
     private GalleriesInterface galleriesInterface;
     private PlacesInterface placesInterface;
     private PrefsInterface prefsInterface;
@@ -471,6 +472,13 @@ public class Flickr {
         }
         return photosetsInterface;
     }
+
+    public StreamingInterface getStreamingInterface() {
+        if (streamingInterface == null) {
+            streamingInterface = new StreamingInterface(apiKey, sharedSecret, transport);
+        }
+        return streamingInterface;
+    }
     
     public GalleriesInterface getGalleriesInterface() {
         if (galleriesInterface == null) {
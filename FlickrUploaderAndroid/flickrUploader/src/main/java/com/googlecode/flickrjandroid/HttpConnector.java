@@ -0,0 +1,227 @@
+package com.googlecode.flickrjandroid;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.net.URL;
+import java.net.URLConnection;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.net.ssl.HandshakeCompletedEvent;
+import javax.net.ssl.HandshakeCompletedListener;
+import javax.net.ssl.HttpsURLConnection;
+import javax.net.ssl.SSLSocket;
+import javax.net.ssl.SSLSocketFactory;
+
+/**
+ * Opens the HTTP connections to Flickr so that they can be kept alive between API calls.
+ * <p>
+ * Connections are pooled by the platform HttpURLConnection, as long as they are not disconnected,
+ * their streams are read to the end and they all share the same SSLSocketFactory. Sharing the
+ * factory also shares its TLS session cache, so that new connections can resume a session instead
+ * of doing a full handshake.
+ */
+public class HttpConnector {
+    private static final Logger LOG = LoggerFactory.getLogger(HttpConnector.class);
+
+    /**
+     * Idle connections kept by the platform pool, per host
+     */
+    private static final int MAX_IDLE_CONNECTIONS = 5;
+
+    static {
+        System.setProperty("http.keepAlive", "true");
+        System.setProperty("http.maxConnections", Integer.toString(MAX_IDLE_CONNECTIONS));
+    }
+
+    private final CountingSSLSocketFactory sslSocketFactory;
+
+    private final AtomicLong nbRequests = new AtomicLong();
+    private final AtomicLong nbConnections = new AtomicLong();
+    private final AtomicLong nbHandshakes = new AtomicLong();
+    private final AtomicLong handshakeMs = new AtomicLong();
+
+    /**
+     * Moving average of the time API calls wait for their response
+     */
+    private final AtomicLong responseMs = new AtomicLong();
+
+    public HttpConnector() {
+        this(HttpsURLConnection.getDefaultSSLSocketFactory());
+    }
+
+    /**
+     * @param sslSocketFactory the factory for the TLS sockets, for instance one trusting a local
+     *                         test server
+     */
+    public HttpConnector(SSLSocketFactory sslSocketFactory) {
+        this.sslSocketFactory = new CountingSSLSocketFactory(sslSocketFactory);
+    }
+
+    /**
+     * Open a connection that can reuse an idle one to the same host. Don't disconnect it once
+     * done, {@link #release(InputStream)} its stream instead.
+     */
+    public HttpURLConnection open(URL url, int timeoutMs) throws IOException {
+        URLConnection conn = url.openConnection();
+        if (conn instanceof HttpsURLConnection) {
+            ((HttpsURLConnection) conn).setSSLSocketFactory(sslSocketFactory);
+        }
+        conn.setConnectTimeout(timeoutMs);
+        conn.setReadTimeout(timeoutMs);
+        nbRequests.incrementAndGet();
+        return (HttpURLConnection) conn;
+    }
+
+    /**
+     * Read what's left of a response and close it, so that its connection goes back to the pool.
+     */
+    public static void release(InputStream in) {
+        if (in == null) {
+            return;
+        }
+        try {
+            byte[] buffer = new byte[1024];
+            while (in.read(buffer) != -1) {
+                // drain
+            }
+        } catch (IOException e) {
+            LOG.debug("Draining the response failed: {}", e.getMessage());
+        } finally {
+            try {
+                in.close();
+            } catch (IOException e) {
+                LOG.debug("Closing the response failed: {}", e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Record the time a request waited for its response headers. API calls are small, so this is
+     * mostly the round trip time to Flickr.
+     *
+     * @param startMs when the request was sent
+     */
+    public void onResponse(long startMs) {
+        long sample = Math.max(0, System.currentTimeMillis() - startMs);
+        long current;
+        long next;
+        do {
+            current = responseMs.get();
+            next = current == 0 ? sample : current + (sample - current) / 4;
+        } while (!responseMs.compareAndSet(current, next));
+    }
+
+    /**
+     * @return the recent average time API calls waited for their response, 0 if unknown
+     */
+    public long getResponseMs() {
+        return responseMs.get();
+    }
+
+    public long getNbRequests() {
+        return nbRequests.get();
+    }
+
+    /**
+     * @return how many new connections had to be opened
+     */
+    public long getNbConnections() {
+        return nbConnections.get();
+    }
+
+    /**
+     * @return the share of requests that went through an already open connection
+     */
+    public double getReuseRatio() {
+        long requests = nbRequests.get();
+        return requests == 0 ? 0 : Math.max(0, 1 - (double) nbConnections.get() / requests);
+    }
+
+    /**
+     * @return the average time between opening a TLS socket and the end of its handshake
+     */
+    public long getAverageHandshakeMs() {
+        long handshakes = nbHandshakes.get();
+        return handshakes == 0 ? 0 : handshakeMs.get() / handshakes;
+    }
+
+    @Override
+    public String toString() {
+        return nbRequests.get() + " requests, " + nbConnections.get() + " connections ("
+                + Math.round(getReuseRatio() * 100) + "% reuse), " + nbHandshakes.get()
+                + " handshakes in " + getAverageHandshakeMs() + "ms on average, responses in "
+                + getResponseMs() + "ms";
+    }
+
+    /**
+     * Counts the sockets created, and times their handshake.
+     */
+    private class CountingSSLSocketFactory extends SSLSocketFactory {
+        private final SSLSocketFactory delegate;
+
+        CountingSSLSocketFactory(SSLSocketFactory delegate) {
+            this.delegate = delegate;
+        }
+
+        private Socket onCreated(Socket socket) {
+            nbConnections.incrementAndGet();
+            if (socket instanceof SSLSocket) {
+                final long start = System.currentTimeMillis();
+                ((SSLSocket) socket).addHandshakeCompletedListener(new HandshakeCompletedListener() {
+                    @Override
+                    public void handshakeCompleted(HandshakeCompletedEvent event) {
+                        nbHandshakes.incrementAndGet();
+                        handshakeMs.addAndGet(System.currentTimeMillis() - start);
+                    }
+                });
+            }
+            return socket;
+        }
+
+        @Override
+        public String[] getDefaultCipherSuites() {
+            return delegate.getDefaultCipherSuites();
+        }
+
+        @Override
+        public String[] getSupportedCipherSuites() {
+            return delegate.getSupportedCipherSuites();
+        }
+
+        @Override
+        public Socket createSocket(Socket s, String host, int port, boolean autoClose) throws IOException {
+            return onCreated(delegate.createSocket(s, host, port, autoClose));
+        }
+
+        @Override
+        public Socket createSocket() throws IOException {
+            return onCreated(delegate.createSocket());
+        }
+
+        @Override
+        public Socket createSocket(String host, int port) throws IOException {
+            return onCreated(delegate.createSocket(host, port));
+        }
+
+        @Override
+        public Socket createSocket(String host, int port, InetAddress localHost, int localPort) throws IOException {
+            return onCreated(delegate.createSocket(host, port, localHost, localPort));
+        }
+
+        @Override
+        public Socket createSocket(InetAddress host, int port) throws IOException {
+            return onCreated(delegate.createSocket(host, port));
+        }
+
+        @Override
+        public Socket createSocket(InetAddress address, int port, InetAddress localAddress, int localPort) throws IOException {
+            return onCreated(delegate.createSocket(address, port, localAddress, localPort));
+        }
+    }
+}
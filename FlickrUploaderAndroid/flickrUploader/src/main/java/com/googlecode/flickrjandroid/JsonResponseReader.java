@@ -0,0 +1,84 @@
+package com.googlecode.flickrjandroid;
+
+import android.util.JsonReader;
+import android.util.JsonToken;
+
+import java.io.IOException;
+
+/**
+ * Reads a Flickr JSON response token by token, straight from the connection, instead of loading
+ * it into a String and then a JSONObject tree.
+ * <p>
+ * Takes care of the {"stat": ..., "code": ..., "message": ...} envelope and hands the payload
+ * object to {@link #readPayload(JsonReader)}, skipping everything else.
+ *
+ * @param <T> what is built from the payload
+ */
+public abstract class JsonResponseReader<T> {
+
+    private final String payloadName;
+
+    /**
+     * @param payloadName the name of the payload in the response, like "photos" for photos.search
+     */
+    protected JsonResponseReader(String payloadName) {
+        this.payloadName = payloadName;
+    }
+
+    /**
+     * Read the payload object, including its begin and end tokens.
+     */
+    protected abstract T readPayload(JsonReader reader) throws IOException;
+
+    public T read(JsonReader reader) throws IOException, FlickrException {
+        T result = null;
+        String stat = null;
+        String code = null;
+        String message = null;
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            if (payloadName.equals(name)) {
+                result = readPayload(reader);
+            } else if ("stat".equals(name)) {
+                stat = reader.nextString();
+            } else if ("code".equals(name)) {
+                code = reader.nextString();
+            } else if ("message".equals(name)) {
+                message = reader.nextString();
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+
+        if ("fail".equals(stat)) {
+            throw new FlickrException(code, message);
+        } else if (!"ok".equals(stat)) {
+            throw new IOException("Unhandled response type <" + stat + ">");
+        } else if (result == null) {
+            throw new IOException("No " + payloadName + " in response");
+        }
+        return result;
+    }
+
+    /**
+     * @return the _content of a {"_content": ...} object, or the value itself if it's a plain string
+     */
+    protected static String readContent(JsonReader reader) throws IOException {
+        if (reader.peek() != JsonToken.BEGIN_OBJECT) {
+            return reader.nextString();
+        }
+        String content = null;
+        reader.beginObject();
+        while (reader.hasNext()) {
+            if ("_content".equals(reader.nextName())) {
+                content = reader.nextString();
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+        return content;
+    }
+}
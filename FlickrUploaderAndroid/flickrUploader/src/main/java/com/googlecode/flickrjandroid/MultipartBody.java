@@ -0,0 +1,161 @@
+package com.googlecode.flickrjandroid;
+
+import com.googlecode.flickrjandroid.uploader.ImageParameter;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A multipart/form-data request body, laid out before anything is sent so that its exact length
+ * is known up front.
+ * <p>
+ * Everything but the files is encoded once into byte arrays. Files are streamed with a large
+ * buffer, as fast as a {@link TokenBucket} allows, and the number of bytes written so far can be
+ * read from any thread to report progress.
+ */
+class MultipartBody {
+    private static final Logger LOG = LoggerFactory.getLogger(MultipartBody.class);
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final String boundary;
+
+    /**
+     * byte[] or File parts, in order
+     */
+    private final List<Object> parts = new ArrayList<>();
+
+    /**
+     * Size of each File part, taken when the body was built
+     */
+    private final List<Long> fileLengths = new ArrayList<>();
+
+    private final long length;
+
+    private final AtomicLong written = new AtomicLong();
+
+    MultipartBody(String boundary, List<Parameter> parameters) {
+        this.boundary = boundary;
+        String delimiter = "--" + boundary;
+
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        long length = 0;
+        write(buffer, delimiter);
+        for (Parameter param : parameters) {
+            write(buffer, "\r\n");
+            Object value = param.getValue();
+            if (param instanceof ImageParameter) {
+                ImageParameter imageParam = (ImageParameter) param;
+                write(buffer, String.format(Locale.US,
+                        "Content-Disposition: form-data; name=\"%s\"; filename=\"%s\";\r\n",
+                        param.getName(), imageParam.getImageName()));
+                write(buffer, String.format(Locale.US, "Content-Type: image/%s\r\n\r\n",
+                        imageParam.getImageType()));
+                if (value instanceof File) {
+                    File file = (File) value;
+                    length += flush(buffer);
+                    parts.add(file);
+                    fileLengths.add(file.length());
+                    length += file.length();
+                } else if (value instanceof byte[]) {
+                    buffer.write((byte[]) value, 0, ((byte[]) value).length);
+                } else {
+                    String valueType = "<null>";
+                    if (value != null) {
+                        valueType = value.getClass().toString();
+                    }
+                    LOG.warn("Not writing {} <{}>=<{}>", valueType, param.getName(), value);
+                }
+            } else {
+                write(buffer, "Content-Disposition: form-data; name=\"" + param.getName() + "\"\r\n");
+                write(buffer, "Content-Type: text/plain; charset=UTF-8\r\n\r\n");
+                write(buffer, String.valueOf(value));
+            }
+            write(buffer, "\r\n");
+            write(buffer, delimiter);
+        }
+        write(buffer, "--\r\n\r\n");
+        length += flush(buffer);
+        this.length = length;
+    }
+
+    private static void write(ByteArrayOutputStream buffer, String string) {
+        byte[] bytes = string.getBytes(UTF8);
+        buffer.write(bytes, 0, bytes.length);
+    }
+
+    private int flush(ByteArrayOutputStream buffer) {
+        int size = buffer.size();
+        if (size > 0) {
+            parts.add(buffer.toByteArray());
+            buffer.reset();
+        }
+        return size;
+    }
+
+    String getContentType() {
+        return "multipart/form-data; boundary=" + boundary;
+    }
+
+    long getLength() {
+        return length;
+    }
+
+    /**
+     * @return how many bytes of the body have been written so far
+     */
+    long getWritten() {
+        return written.get();
+    }
+
+    void writeTo(OutputStream out, TokenBucket bandwidth) throws IOException {
+        int fileIndex = 0;
+        for (Object part : parts) {
+            if (part instanceof byte[]) {
+                out.write((byte[]) part);
+                written.addAndGet(((byte[]) part).length);
+            } else {
+                writeFile(out, (File) part, fileLengths.get(fileIndex++), bandwidth);
+            }
+        }
+    }
+
+    /**
+     * Write exactly the number of bytes announced in the content length, even if the file changed
+     * in the meantime.
+     */
+    private void writeFile(OutputStream out, File file, long fileLength, TokenBucket bandwidth) throws IOException {
+        try (InputStream in = new FileInputStream(file)) {
+            byte[] buf = new byte[BUFFER_SIZE];
+            long remaining = fileLength;
+            while (remaining > 0) {
+                int acquired = bandwidth.acquire((int) Math.min(buf.length, remaining));
+                int res = in.read(buf, 0, acquired);
+                if (res == -1) {
+                    throw new EOFException(file + " is " + remaining + " bytes shorter than expected");
+                }
+                if (res < acquired) {
+                    bandwidth.release(acquired - res);
+                }
+                out.write(buf, 0, res);
+                remaining -= res;
+                written.addAndGet(res);
+            }
+        }
+    }
+}
@@ -3,6 +3,8 @@
  */
 package com.googlecode.flickrjandroid;
 
+import android.util.JsonReader;
+
 import com.googlecode.flickrjandroid.oauth.OAuthUtils;
 import com.googlecode.flickrjandroid.util.IOUtilities;
 import com.googlecode.flickrjandroid.util.StringUtilities;
@@ -42,6 +44,10 @@ public class REST extends Transport {
 	private static final String UTF8 = "UTF-8";
 	private static final String PATH = "/services/rest/";
 
+	private static HttpConnector connector = new HttpConnector();
+
+	private static final TokenBucket uploadBandwidth = new TokenBucket();
+
 	/**
 	 * Construct a new REST transport instance.
 	 */
@@ -62,6 +68,24 @@ public class REST extends Transport {
 		setHost(host);
 	}
 
+	public static HttpConnector getConnector() {
+		return connector;
+	}
+
+	/**
+	 * Replace the connector used for API calls and uploads, for instance to talk to a local server.
+	 */
+	public static void setConnector(HttpConnector connector) {
+		REST.connector = connector;
+	}
+
+	/**
+	 * @return the cap shared by all upload bodies
+	 */
+	public static TokenBucket getUploadBandwidth() {
+		return uploadBandwidth;
+	}
+
 	/**
 	 * Invoke an HTTP GET request on a remote host. You must close the InputStream after you are done with.
 	 *
@@ -79,26 +103,44 @@ public class REST extends Transport {
 		return new RESTResponse(data, parameters.toString());
 	}
 
+	@Override
+	public <T> T get(String path, List<Parameter> parameters, JsonResponseReader<T> responseReader) throws IOException, FlickrException {
+		parameters.add(new Parameter("nojsoncallback", "1"));
+		parameters.add(new Parameter("format", "json"));
+		URL url = UrlUtilities.buildUrl(getHost(), getPort(), path, parameters);
+		LOG.info("url : {}", url);
+		return readJSON(getInputStream(url), responseReader);
+	}
+
+	/**
+	 * Read a JSON response as it comes, then leave the connection to the pool.
+	 */
+	private static <T> T readJSON(InputStream in, JsonResponseReader<T> responseReader) throws IOException, FlickrException {
+		try {
+			return responseReader.read(new JsonReader(new InputStreamReader(in, OAuthUtils.ENC)));
+		} finally {
+			HttpConnector.release(in);
+		}
+	}
+
 	private InputStream getInputStream(URL url) throws IOException {
 		if (BuildConfig.DEBUG) {
 			LOG.info("GET URL: {}", url);
 		}
-		HttpURLConnection conn = (HttpURLConnection) url.openConnection();
-		if (url.toString().contains("method=flickr.test.echo")) {
-			conn.setConnectTimeout(5_000);
-			conn.setReadTimeout(5_000);
-		} else {
-            conn.setConnectTimeout(50_000);
-            conn.setReadTimeout(50_000);
-		}
+		int timeout = url.toString().contains("method=flickr.test.echo") ? 5_000 : 50_000;
+		HttpURLConnection conn = connector.open(url, timeout);
 		conn.addRequestProperty("Cache-Control", "no-cache,max-age=0");
 		conn.addRequestProperty("Pragma", "no-cache");
 		conn.setRequestMethod("GET");
         conn.connect();
+		// like for a POST, the handshake of a new connection is not part of the round trip
+		long start = System.currentTimeMillis();
 		if (BuildConfig.DEBUG) {
             LOG.info("response code : {}", conn.getResponseCode());
 		}
-		return conn.getInputStream();
+		InputStream in = conn.getInputStream();
+		connector.onResponse(start);
+		return in;
 	}
 
 	/**
@@ -162,14 +204,14 @@ public class REST extends Transport {
 		return sendUpload(path, parameters, null);
 	}
 
-	private static Map<Media, UploadThread> uploadThreads = new ConcurrentHashMap<>();
+	private static Map<Media, UploadTask> uploadTasks = new ConcurrentHashMap<>();
 
 	public static void kill(Media media) {
 		try {
-			UploadThread uploadThread = uploadThreads.get(media);
-            LOG.warn("killing {}, uploadThread={}", media, uploadThread);
-			if (uploadThread != null) {
-				uploadThread.kill(false);
+			UploadTask uploadTask = uploadTasks.get(media);
+            LOG.warn("killing {}, uploadTask={}", media, uploadTask);
+			if (uploadTask != null) {
+				uploadTask.kill(false);
 			}
 		} catch (Exception e) {
 			LOG.error("Error killing media upload", e);
@@ -182,18 +224,39 @@ public class REST extends Transport {
 		}
 
         URL url = UrlUtilities.buildPostUrl(getHost(), getPort(), path);
-        UploadThread uploadThread;
+        UploadTask uploadTask = new UploadTask(media, url, parameters);
+        uploadTasks.put(media, uploadTask);
         try {
-            uploadThread = new UploadThread(media, url, parameters);
-        } catch (ParserConfigurationException e) {
-            throw new IOException("Error creating upload thread", e);
+            return uploadTask.doUpload();
+        } finally {
+            uploadTasks.remove(media);
         }
-        uploadThreads.put(media, uploadThread);
-
-        return uploadThread.doUpload();
     }
 
+	/**
+	 * Reads the body of a successful response
+	 */
+	private interface StreamReader<T> {
+		T read(InputStream in) throws IOException, FlickrException;
+	}
+
+	private static final StreamReader<String> STRING_READER = new StreamReader<String>() {
+		@Override
+		public String read(InputStream in) throws IOException {
+			return readFromStream(in).trim();
+		}
+	};
+
 	private String sendPost(String path, List<Parameter> parameters) throws IOException {
+		try {
+			return sendPost(path, parameters, STRING_READER);
+		} catch (FlickrException e) {
+			// can't happen, reading a String doesn't look at the Flickr status
+			throw new IOException(e);
+		}
+	}
+
+	private <T> T sendPost(String path, List<Parameter> parameters, StreamReader<T> streamReader) throws IOException, FlickrException {
 		String method = null;
 		int timeout = 0;
 		for (Parameter parameter : parameters) {
@@ -212,13 +275,14 @@ public class REST extends Transport {
             LOG.trace("Send Post Input Params: path '{}'; parameters {}", path, parameters);
         }
 		HttpURLConnection conn = null;
-		String data = null;
+		T data = null;
+		boolean reusable = false;
 		try {
             URL url = UrlUtilities.buildPostUrl(getHost(), getPort(), path);
             if (BuildConfig.DEBUG) {
                 LOG.info("Post URL: {}", url);
             }
-            conn = (HttpURLConnection) url.openConnection();
+            conn = connector.open(url, timeout);
             conn.setRequestMethod("POST");
             String postParam = encodeParameters(parameters);
             byte[] bytes = postParam.getBytes(UTF8);
@@ -229,16 +293,16 @@ public class REST extends Transport {
             conn.setUseCaches(false);
             conn.setDoOutput(true);
             conn.setDoInput(true);
-            conn.setConnectTimeout(timeout);
-            conn.setReadTimeout(timeout);
             conn.connect();
             try (DataOutputStream out = new DataOutputStream(conn.getOutputStream())) {
                 out.write(bytes);
             }
 
             int responseCode = HttpURLConnection.HTTP_OK;
+            long start = System.currentTimeMillis();
             try {
                 responseCode = conn.getResponseCode();
+                connector.onResponse(start);
             } catch (IOException e) {
                 LOG.error("Failed to get the POST response code", e);
                 try (InputStream errorStream = conn.getErrorStream()) {
@@ -249,14 +313,22 @@ public class REST extends Transport {
             }
             if ((responseCode != HttpURLConnection.HTTP_OK)) {
                 String errorMessage = readFromStream(conn.getErrorStream());
+                reusable = true;
                 throw new IOException("Connection Failed. Response Code: " + responseCode + ", Response Message: " + conn.getResponseMessage() + ", Error: " + errorMessage);
             }
 
-            String result = readFromStream(conn.getInputStream());
-            data = result.trim();
+            try {
+                data = streamReader.read(conn.getInputStream());
+            } catch (FlickrException e) {
+                // an API error still comes in a complete response
+                reusable = true;
+                throw e;
+            }
+            reusable = true;
             return data;
         } finally {
-            if (conn != null)
+            // a fully read response leaves the connection in the pool for the next call
+            if (conn != null && !reusable)
                 conn.disconnect();
             if (BuildConfig.DEBUG) {
                 LOG.info("Send Post Result: {}", data);
@@ -283,6 +355,16 @@ public class REST extends Transport {
 		return new RESTResponse(data, parameters.toString());
 	}
 
+	@Override
+	protected <T> T post(String path, List<Parameter> parameters, final JsonResponseReader<T> responseReader) throws IOException, FlickrException {
+		return sendPost(path, parameters, new StreamReader<T>() {
+			@Override
+			public T read(InputStream in) throws IOException, FlickrException {
+				return readJSON(in, responseReader);
+			}
+		});
+	}
+
     private static String encodeParameters(List<Parameter> parameters) {
 		if (parameters == null || parameters.isEmpty()) {
 			return "";
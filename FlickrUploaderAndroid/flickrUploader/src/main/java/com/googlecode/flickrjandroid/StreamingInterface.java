@@ -0,0 +1,350 @@
+package com.googlecode.flickrjandroid;
+
+import android.util.JsonReader;
+import android.util.JsonToken;
+
+import com.googlecode.flickrjandroid.oauth.OAuthInterface;
+import com.googlecode.flickrjandroid.oauth.OAuthUtils;
+import com.googlecode.flickrjandroid.photos.Photo;
+import com.googlecode.flickrjandroid.photos.PhotoList;
+import com.googlecode.flickrjandroid.photos.PhotosInterface;
+import com.googlecode.flickrjandroid.photos.SearchParameters;
+import com.googlecode.flickrjandroid.photos.upload.Ticket;
+import com.googlecode.flickrjandroid.photos.upload.UploadInterface;
+import com.googlecode.flickrjandroid.photosets.Photoset;
+import com.googlecode.flickrjandroid.photosets.PhotosetsInterface;
+import com.googlecode.flickrjandroid.tags.Tag;
+
+import org.json.JSONException;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Streaming versions of the API methods the uploader calls the most, reading only the fields it
+ * uses.
+ * <p>
+ * The photos and photosets interfaces load each response into a String, then a JSONObject tree,
+ * then fully populated objects. These methods read the response from the connection token by
+ * token and build objects with just a few fields set.
+ */
+public class StreamingInterface {
+
+    private final String apiKey;
+    private final String sharedSecret;
+    private final Transport transportAPI;
+
+    public StreamingInterface(String apiKey, String sharedSecret, Transport transportAPI) {
+        this.apiKey = apiKey;
+        this.sharedSecret = sharedSecret;
+        this.transportAPI = transportAPI;
+    }
+
+    /**
+     * photos.search, returning photos with their id, secret, upload date, visibility flags and
+     * machine tags, the last three if asked for in the extras.
+     */
+    public PhotoList search(SearchParameters params, int perPage, int page) throws IOException, FlickrException, JSONException {
+        List<Parameter> parameters = newParameters(PhotosInterface.METHOD_SEARCH);
+        parameters.addAll(params.getAsParameters());
+        if (perPage > 0) {
+            parameters.add(new Parameter("per_page", "" + perPage));
+        }
+        if (page > 0) {
+            parameters.add(new Parameter("page", "" + page));
+        }
+        return call(parameters, PHOTO_LIST_READER);
+    }
+
+    /**
+     * photosets.getList, returning photosets with their id, title, photo count and primary photo
+     * id.
+     */
+    public List<Photoset> getPhotosets(String userId) throws IOException, FlickrException, JSONException {
+        List<Parameter> parameters = newParameters(PhotosetsInterface.METHOD_GET_LIST);
+        if (userId != null) {
+            parameters.add(new Parameter("user_id", userId));
+        }
+        return call(parameters, PHOTOSETS_READER);
+    }
+
+    /**
+     * photos.getInfo, returning the photo with its id, secret, upload date, visibility flags and
+     * tags.
+     */
+    public Photo getInfo(String photoId, String secret) throws IOException, FlickrException, JSONException {
+        List<Parameter> parameters = newParameters(PhotosInterface.METHOD_GET_INFO);
+        parameters.add(new Parameter("photo_id", photoId));
+        if (secret != null) {
+            parameters.add(new Parameter("secret", secret));
+        }
+        return call(parameters, PHOTO_INFO_READER);
+    }
+
+    /**
+     * photos.upload.checkTickets, returning the status and photo id of each ticket.
+     */
+    public List<Ticket> checkTickets(Collection<String> ticketIds) throws IOException, FlickrException, JSONException {
+        List<Parameter> parameters = newParameters(UploadInterface.METHOD_CHECK_TICKETS);
+        StringBuilder tickets = new StringBuilder();
+        for (String ticketId : ticketIds) {
+            if (tickets.length() > 0) {
+                tickets.append(',');
+            }
+            tickets.append(ticketId);
+        }
+        parameters.add(new Parameter("tickets", tickets.toString()));
+        return call(parameters, TICKETS_READER);
+    }
+
+    private List<Parameter> newParameters(String method) {
+        List<Parameter> parameters = new ArrayList<Parameter>();
+        parameters.add(new Parameter("method", method));
+        if (OAuthUtils.hasSigned()) {
+            parameters.add(new Parameter(OAuthInterface.PARAM_OAUTH_CONSUMER_KEY, apiKey));
+        } else {
+            parameters.add(new Parameter("api_key", apiKey));
+        }
+        return parameters;
+    }
+
+    private <T> T call(List<Parameter> parameters, JsonResponseReader<T> responseReader) throws IOException, FlickrException, JSONException {
+        if (OAuthUtils.hasSigned()) {
+            OAuthUtils.addOAuthToken(parameters);
+            return transportAPI.postJSON(sharedSecret, parameters, responseReader);
+        }
+        return transportAPI.get(transportAPI.getPath(), parameters, responseReader);
+    }
+
+    /**
+     * Read the fields shared by search results and getInfo, skip the others.
+     */
+    private static Photo readPhoto(JsonReader reader) throws IOException {
+        Photo photo = new Photo();
+        List<Tag> tags = new ArrayList<Tag>();
+        List<String> machineTags = new ArrayList<String>();
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            if ("id".equals(name)) {
+                photo.setId(reader.nextString());
+            } else if ("secret".equals(name)) {
+                photo.setSecret(reader.nextString());
+            } else if ("dateupload".equals(name)) {
+                photo.setDatePosted(reader.nextString());
+            } else if ("ispublic".equals(name) || "isfriend".equals(name) || "isfamily".equals(name)) {
+                setFlag(photo, name, reader.nextString());
+            } else if ("visibility".equals(name)) {
+                reader.beginObject();
+                while (reader.hasNext()) {
+                    setFlag(photo, reader.nextName(), reader.nextString());
+                }
+                reader.endObject();
+            } else if ("dates".equals(name)) {
+                reader.beginObject();
+                while (reader.hasNext()) {
+                    if ("posted".equals(reader.nextName())) {
+                        photo.setDatePosted(reader.nextString());
+                    } else {
+                        reader.skipValue();
+                    }
+                }
+                reader.endObject();
+            } else if ("machine_tags".equals(name)) {
+                for (String machineTag : reader.nextString().trim().split(" ")) {
+                    if (machineTag.length() > 0) {
+                        machineTags.add(machineTag);
+                    }
+                }
+            } else if ("tags".equals(name)) {
+                readTags(reader, tags);
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+        photo.setTags(tags);
+        photo.setMachineTags(machineTags);
+        return photo;
+    }
+
+    private static void setFlag(Photo photo, String name, String value) {
+        boolean flag = "1".equals(value);
+        if ("ispublic".equals(name)) {
+            photo.setPublicFlag(flag);
+        } else if ("isfriend".equals(name)) {
+            photo.setFriendFlag(flag);
+        } else if ("isfamily".equals(name)) {
+            photo.setFamilyFlag(flag);
+        }
+    }
+
+    /**
+     * Tags come as {"tag": [...]} from getInfo, and as a space separated string in search results.
+     */
+    private static void readTags(JsonReader reader, List<Tag> tags) throws IOException {
+        if (reader.peek() == JsonToken.STRING) {
+            for (String value : reader.nextString().split(" ")) {
+                Tag tag = new Tag();
+                tag.setValue(value);
+                tags.add(tag);
+            }
+            return;
+        }
+        reader.beginObject();
+        while (reader.hasNext()) {
+            if (!"tag".equals(reader.nextName())) {
+                reader.skipValue();
+                continue;
+            }
+            reader.beginArray();
+            while (reader.hasNext()) {
+                Tag tag = new Tag();
+                reader.beginObject();
+                while (reader.hasNext()) {
+                    String name = reader.nextName();
+                    if ("id".equals(name)) {
+                        tag.setId(reader.nextString());
+                    } else if ("author".equals(name)) {
+                        tag.setAuthor(reader.nextString());
+                    } else if ("raw".equals(name)) {
+                        tag.setRaw(reader.nextString());
+                    } else if ("_content".equals(name)) {
+                        tag.setValue(reader.nextString());
+                    } else {
+                        reader.skipValue();
+                    }
+                }
+                reader.endObject();
+                tags.add(tag);
+            }
+            reader.endArray();
+        }
+        reader.endObject();
+    }
+
+    private static final JsonResponseReader<PhotoList> PHOTO_LIST_READER = new JsonResponseReader<PhotoList>("photos") {
+        @Override
+        protected PhotoList readPayload(JsonReader reader) throws IOException {
+            PhotoList photos = new PhotoList();
+            reader.beginObject();
+            while (reader.hasNext()) {
+                String name = reader.nextName();
+                if ("page".equals(name)) {
+                    photos.setPage(reader.nextInt());
+                } else if ("pages".equals(name)) {
+                    photos.setPages(reader.nextInt());
+                } else if ("perpage".equals(name)) {
+                    photos.setPerPage(reader.nextInt());
+                } else if ("total".equals(name)) {
+                    photos.setTotal(reader.nextInt());
+                } else if ("photo".equals(name)) {
+                    reader.beginArray();
+                    while (reader.hasNext()) {
+                        photos.add(readPhoto(reader));
+                    }
+                    reader.endArray();
+                } else {
+                    reader.skipValue();
+                }
+            }
+            reader.endObject();
+            return photos;
+        }
+    };
+
+    private static final JsonResponseReader<Photo> PHOTO_INFO_READER = new JsonResponseReader<Photo>("photo") {
+        @Override
+        protected Photo readPayload(JsonReader reader) throws IOException {
+            return readPhoto(reader);
+        }
+    };
+
+    private static final JsonResponseReader<List<Ticket>> TICKETS_READER = new JsonResponseReader<List<Ticket>>("uploader") {
+        @Override
+        protected List<Ticket> readPayload(JsonReader reader) throws IOException {
+            List<Ticket> tickets = new ArrayList<Ticket>();
+            reader.beginObject();
+            while (reader.hasNext()) {
+                if (!"ticket".equals(reader.nextName())) {
+                    reader.skipValue();
+                    continue;
+                }
+                reader.beginArray();
+                while (reader.hasNext()) {
+                    tickets.add(readTicket(reader));
+                }
+                reader.endArray();
+            }
+            reader.endObject();
+            return tickets;
+        }
+
+        private Ticket readTicket(JsonReader reader) throws IOException {
+            Ticket ticket = new Ticket();
+            reader.beginObject();
+            while (reader.hasNext()) {
+                String name = reader.nextName();
+                if ("id".equals(name)) {
+                    ticket.setTicketId(reader.nextString());
+                } else if ("complete".equals(name)) {
+                    ticket.setStatus(Integer.parseInt(reader.nextString()));
+                } else if ("photoid".equals(name)) {
+                    ticket.setPhotoId(reader.nextString());
+                } else if ("invalid".equals(name)) {
+                    ticket.setInvalid("1".equals(reader.nextString()));
+                } else {
+                    reader.skipValue();
+                }
+            }
+            reader.endObject();
+            return ticket;
+        }
+    };
+
+    private static final JsonResponseReader<List<Photoset>> PHOTOSETS_READER = new JsonResponseReader<List<Photoset>>("photosets") {
+        @Override
+        protected List<Photoset> readPayload(JsonReader reader) throws IOException {
+            List<Photoset> photosets = new ArrayList<Photoset>();
+            reader.beginObject();
+            while (reader.hasNext()) {
+                if (!"photoset".equals(reader.nextName())) {
+                    reader.skipValue();
+                    continue;
+                }
+                reader.beginArray();
+                while (reader.hasNext()) {
+                    photosets.add(readPhotoset(reader));
+                }
+                reader.endArray();
+            }
+            reader.endObject();
+            return photosets;
+        }
+
+        private Photoset readPhotoset(JsonReader reader) throws IOException {
+            Photoset photoset = new Photoset();
+            reader.beginObject();
+            while (reader.hasNext()) {
+                String name = reader.nextName();
+                if ("id".equals(name)) {
+                    photoset.setId(reader.nextString());
+                } else if ("primary".equals(name)) {
+                    Photo primaryPhoto = new Photo();
+                    primaryPhoto.setId(reader.nextString());
+                    photoset.setPrimaryPhoto(primaryPhoto);
+                } else if ("photos".equals(name)) {
+                    photoset.setPhotoCount(reader.nextString());
+                } else if ("title".equals(name)) {
+                    photoset.setTitle(readContent(reader));
+                } else {
+                    reader.skipValue();
+                }
+            }
+            reader.endObject();
+            return photoset;
+        }
+    };
+}
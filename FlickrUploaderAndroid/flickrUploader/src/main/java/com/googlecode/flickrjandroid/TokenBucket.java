@@ -0,0 +1,102 @@
+package com.googlecode.flickrjandroid;
+
+import java.io.InterruptedIOException;
+
+/**
+ * Caps the rate at which upload bodies are written. A single bucket is shared by all the uploads
+ * running in parallel, so that together they stay below the cap.
+ * <p>
+ * Tokens are bytes. They accumulate at the configured rate up to one second worth, so writing
+ * may resume with a burst after a pause, but the average rate stays at the cap.
+ */
+public class TokenBucket {
+
+    /**
+     * Smallest write worth waiting for, to avoid many tiny writes at low rates
+     */
+    private static final int MIN_BURST = 4 * 1024;
+
+    /**
+     * Longest single wait, so that a new rate is picked up quickly
+     */
+    private static final long MAX_WAIT_MS = 250;
+
+    /**
+     * 0 for no limit
+     */
+    private long bytesPerSecond = 0;
+
+    private double tokens = 0;
+
+    private long lastRefillNanos = System.nanoTime();
+
+    /**
+     * @param bytesPerSecond the new cap, 0 for no limit
+     */
+    public synchronized void setRate(long bytesPerSecond) {
+        bytesPerSecond = Math.max(0, bytesPerSecond);
+        if (this.bytesPerSecond != bytesPerSecond) {
+            refill();
+            this.bytesPerSecond = bytesPerSecond;
+            tokens = Math.min(tokens, getCapacity());
+        }
+    }
+
+    /**
+     * @return the cap in bytes per second, 0 for no limit
+     */
+    public synchronized long getRate() {
+        return bytesPerSecond;
+    }
+
+    /**
+     * Wait until some bytes may be written.
+     *
+     * @param max how many bytes the caller would like to write
+     * @return how many bytes may be written now, between 1 and max
+     */
+    public int acquire(int max) throws InterruptedIOException {
+        while (true) {
+            long waitMs;
+            synchronized (this) {
+                if (bytesPerSecond == 0) {
+                    return max;
+                }
+                refill();
+                int wanted = (int) Math.min(max, getCapacity());
+                if (tokens >= wanted) {
+                    tokens -= wanted;
+                    return wanted;
+                }
+                waitMs = (long) Math.ceil((wanted - tokens) * 1000 / bytesPerSecond);
+            }
+            try {
+                Thread.sleep(Math.max(1, Math.min(waitMs, MAX_WAIT_MS)));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while throttled");
+            }
+        }
+    }
+
+    /**
+     * Give back bytes acquired but not written, when fewer bytes could be read than acquired.
+     */
+    public synchronized void release(int unused) {
+        if (bytesPerSecond > 0 && unused > 0) {
+            tokens = Math.min(getCapacity(), tokens + unused);
+        }
+    }
+
+    private long getCapacity() {
+        return Math.max(MIN_BURST, bytesPerSecond);
+    }
+
+    private void refill() {
+        long now = System.nanoTime();
+        if (bytesPerSecond > 0) {
+            tokens = Math.min(getCapacity(), tokens + (now - lastRefillNanos) * bytesPerSecond / 1e9);
+        }
+        lastRefillNanos = now;
+    }
+}
@@ -4,8 +4,11 @@
 package com.googlecode.flickrjandroid;
 
 import java.io.IOException;
+import java.io.StringReader;
 import java.util.List;
 
+import android.util.JsonReader;
+
 import org.json.JSONException;
 import org.xml.sax.SAXException;
 
@@ -98,6 +101,21 @@ public abstract class Transport {
     
     public Response postJSON(String apiSharedSecret, 
             List<Parameter> parameters) throws IOException, JSONException, FlickrException {
+        addJSONParams(apiSharedSecret, parameters);
+        return post(OAuthInterface.PATH_REST, parameters);
+    }
+
+    /**
+     * Same as {@link #postJSON(String, List)}, but the response is read by the given reader as it
+     * comes.
+     */
+    public <T> T postJSON(String apiSharedSecret, List<Parameter> parameters,
+            JsonResponseReader<T> responseReader) throws IOException, JSONException, FlickrException {
+        addJSONParams(apiSharedSecret, parameters);
+        return post(OAuthInterface.PATH_REST, parameters, responseReader);
+    }
+
+    private void addJSONParams(String apiSharedSecret, List<Parameter> parameters) {
         boolean isOAuth = false;
         for (int i = parameters.size() - 1; i >= 0; i--) {
             if (parameters.get(i) instanceof OAuthTokenParameter) {
@@ -110,7 +128,24 @@ public abstract class Transport {
         if (isOAuth) {
             OAuthUtils.addOAuthParams(apiSharedSecret, OAuthInterface.URL_REST, parameters);
         }
-        return post(OAuthInterface.PATH_REST, parameters);
+    }
+
+    /**
+     * Invoke an HTTP GET request on a remote host, and read the JSON response as it comes.
+     * Transports that can't stream read it from the complete response.
+     */
+    public <T> T get(String path, List<Parameter> parameters,
+            JsonResponseReader<T> responseReader) throws IOException, JSONException, FlickrException {
+        return responseReader.read(new JsonReader(new StringReader(get(path, parameters).getRawResponse())));
+    }
+
+    /**
+     * Invoke an HTTP POST request on a remote host, and read the JSON response as it comes.
+     * Transports that can't stream read it from the complete response.
+     */
+    protected <T> T post(String path, List<Parameter> parameters,
+            JsonResponseReader<T> responseReader) throws IOException, JSONException, FlickrException {
+        return responseReader.read(new JsonReader(new StringReader(post(path, parameters).getRawResponse())));
     }
 
     /**
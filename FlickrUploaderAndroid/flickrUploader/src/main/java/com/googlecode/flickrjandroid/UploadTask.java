@@ -0,0 +1,318 @@
+package com.googlecode.flickrjandroid;
+
+import android.os.SystemClock;
+import android.support.annotation.Nullable;
+
+import com.googlecode.flickrjandroid.uploader.UploadResponse;
+import com.rafali.common.ToolString;
+import com.rafali.flickruploader.model.Media;
+import com.rafali.flickruploader.service.NetworkQuality;
+import com.rafali.flickruploader.service.UploadService;
+import com.rafali.flickruploader2.BuildConfig;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.xml.sax.SAXException;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * A single photo upload, run on the calling thread.
+ * <p>
+ * All in-flight uploads share one watchdog thread, which samples their progress, keeps it moving
+ * while Flickr processes the photo and kills the ones that stalled.
+ */
+class UploadTask {
+    private static final Logger LOG = LoggerFactory.getLogger(UploadTask.class);
+    private static final int LIMIT = 970;
+    private static final int TIMEOUT_MS = 2 * 60_000;
+
+    /**
+     * How often progress is sampled while the body is being sent
+     */
+    private static final long PROGRESS_SAMPLE_MS = 250;
+
+    private static final String BOUNDARY = "---------------------------7d273f7a0d3";
+
+    private static final ScheduledExecutorService watchdog = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "Upload watchdog");
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+
+    private final Media media;
+    private final List<Parameter> parameters;
+    private Object response;
+    private final URL url;
+
+    private volatile ScheduledFuture<?> watchdogHandle;
+
+    /**
+     * Only used from the watchdog thread
+     */
+    private int lastProgress = 0;
+    private long lastProgressChange;
+    private long nextProgressBump = 0;
+
+    private HttpURLConnection conn = null;
+    private InputStream in;
+
+    private final Object lock = new Object();
+
+    /**
+     * Set while the request body is being sent
+     */
+    private volatile MultipartBody body;
+
+    @Nullable
+    private Exception killedWithException = null;
+    private long uploadStartMs;
+
+    UploadTask(Media media, URL url, List<Parameter> parameters) {
+        this.media = media;
+        this.parameters = parameters;
+        this.url = url;
+    }
+
+    private static void reportProgress(Media media, int progress) {
+        media.setProgress(progress);
+        UploadService.onUploadProgress(media);
+    }
+
+    public void kill(boolean isTimeout) {
+        synchronized (lock) {
+            if (isTimeout) {
+                long dt = System.currentTimeMillis() - uploadStartMs;
+                killedWithException = new TimeoutException("Upload timed out after " + dt + "ms");
+            } else {
+                killedWithException = new InterruptedException("Upload killed");
+            }
+        }
+
+        if (conn != null) {
+            try {
+                conn.setConnectTimeout(50);
+                conn.setReadTimeout(50);
+                conn.disconnect();
+            } catch (Exception e) {
+                LOG.error("Error killing connection", e);
+            }
+        } else {
+            LOG.warn("HttpURLConnection is null");
+        }
+        if (in != null) {
+            try {
+                in.close();
+            } catch (Exception e) {
+                LOG.error("Closing InputStream failed", e);
+            }
+        } else {
+            LOG.warn("InputStream is null");
+        }
+        LOG.warn("{} is killed", this);
+    }
+
+    /**
+     * Run by the watchdog every {@link #PROGRESS_SAMPLE_MS} while the upload is in flight.
+     */
+    private void watch() {
+        long now = System.currentTimeMillis();
+        sampleProgress();
+        if (media.getProgress() > LIMIT && media.getProgress() < 999 && now >= nextProgressBump) {
+            // Flickr is processing the photo, show that something is still happening
+            reportProgress(media, Math.min(998, media.getProgress() + 1));
+            nextProgressBump = now + Math.max(1000, (media.getProgress() - LIMIT) * 600);
+        }
+        if (lastProgress != media.getProgress()) {
+            lastProgress = media.getProgress();
+            lastProgressChange = now;
+        } else if (media.getProgress() < 999 && now - lastProgressChange >= TIMEOUT_MS) {
+            LOG.warn("Upload is taking too long, started {} ago",
+                    ToolString.formatDuration(now - media.getTimestampUploadStarted()));
+            watchdogHandle.cancel(false);
+            kill(true);
+        }
+    }
+
+    /**
+     * Report how much of the body was sent, at most every {@link #PROGRESS_SAMPLE_MS} so that
+     * the progress listeners don't slow down the upload itself.
+     */
+    private void sampleProgress() {
+        synchronized (lock) {
+            MultipartBody body = this.body;
+            if (body == null || body.getLength() == 0) {
+                return;
+            }
+            media.setBytesSent(body.getWritten());
+            int progress = (int) Math.min(LIMIT, LIMIT * ((double) body.getWritten()) / body.getLength());
+            if (progress > media.getProgress()) {
+                reportProgress(media, progress);
+            }
+        }
+    }
+
+    private void setResponse(Object response) {
+        synchronized (lock) {
+            if (this.response != null) {
+                LOG.warn("Upload response set multiple times",
+                        new RuntimeException("Upload response already set to <" + this.response
+                                + ">, not resetting"));
+            }
+
+            this.response = response;
+        }
+    }
+
+    private void run() {
+        reportProgress(media, 0);
+        media.setBytesSent(0);
+        boolean reusable = false;
+        try {
+            if (BuildConfig.DEBUG) {
+                LOG.debug("Post URL: {}", url);
+            }
+            conn = REST.getConnector().open(url, TIMEOUT_MS);
+            conn.setRequestMethod("POST");
+
+            MultipartBody body = new MultipartBody(BOUNDARY, parameters);
+            conn.setRequestProperty("Content-Type", body.getContentType());
+            conn.setRequestProperty("Host", "api.flickr.com");
+            conn.setDoInput(true);
+            conn.setDoOutput(true);
+
+            LOG.debug("contentLength : {}", body.getLength());
+            conn.setFixedLengthStreamingMode(body.getLength());
+
+            conn.connect();
+            reportProgress(media, 1);
+            try (OutputStream out = conn.getOutputStream()) {
+                reportProgress(media, 2);
+                this.body = body;
+                long start = System.currentTimeMillis();
+                long cpuStart = SystemClock.currentThreadTimeMillis();
+                long transfer = NetworkQuality.onTransferStart();
+                try {
+                    body.writeTo(out, REST.getUploadBandwidth());
+                } finally {
+                    media.setBytesSent(body.getWritten());
+                    NetworkQuality.onTransfer(transfer, body.getWritten(), System.currentTimeMillis() - start);
+                }
+                long cpuMs = SystemClock.currentThreadTimeMillis() - cpuStart;
+                LOG.debug("{} bytes sent in {}ms, {}ms CPU per GB", body.getLength(),
+                        System.currentTimeMillis() - start, cpuMs * (1L << 30) / Math.max(1, body.getLength()));
+            }
+
+            synchronized (lock) {
+                this.body = null;
+                reportProgress(media, LIMIT + 1);
+            }
+            int responseCode = conn.getResponseCode();
+            if (responseCode < 0) {
+                throw new IOException("Upload error: " + responseCode);
+            } else if ((responseCode != HttpURLConnection.HTTP_OK)) {
+                String errorMessage = REST.readFromStream(conn.getErrorStream());
+                String detailMessage = "Connection Failed. Response Code: " + responseCode
+                        + ", Response Message: " + conn.getResponseMessage() + ", Error: "
+                        + errorMessage;
+                throw new IOException(detailMessage);
+            }
+
+            synchronized (lock) {
+                if (killedWithException != null) {
+                    throw new UploadService.UploadException("upload failed with exception", killedWithException);
+                }
+            }
+
+            in = conn.getInputStream();
+            UploadResponse response = UploadResponse.read(in);
+            HttpConnector.release(in);
+            reusable = true;
+            setResponse(response);
+        } catch (Exception e) {
+            setResponse(e);
+        } finally {
+            try {
+                reportProgress(media, 1000);
+                // keep the connection for the next upload or API call, unless it's in a bad state
+                if (conn != null && !reusable) {
+                    conn.setConnectTimeout(50);
+                    conn.setReadTimeout(50);
+                    conn.disconnect();
+                }
+            } catch (Exception e) {
+                LOG.error("Finishing off upload {} failed", this, e);
+            }
+        }
+    }
+
+    public Response doUpload() throws IOException, FlickrException, SAXException
+    {
+        synchronized (lock) {
+            uploadStartMs = System.currentTimeMillis();
+        }
+        lastProgressChange = uploadStartMs;
+        watchdogHandle = watchdog.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    watch();
+                } catch (Exception e) {
+                    LOG.error("Watching {} failed", media, e);
+                }
+            }
+        }, PROGRESS_SAMPLE_MS, PROGRESS_SAMPLE_MS, TimeUnit.MILLISECONDS);
+        try {
+            run();
+        } finally {
+            watchdogHandle.cancel(false);
+        }
+
+        synchronized (lock) {
+            if (response instanceof Response) {
+                return (Response) response;
+            }
+
+            if (killedWithException != null) {
+                // We were killed, just report the kill reason
+                response = killedWithException;
+            }
+
+            if (response instanceof Throwable) {
+                long dtMs = System.currentTimeMillis() - uploadStartMs;
+                LOG.info("Upload exceptioned after {}ms", dtMs);
+            }
+
+            LOG.debug("response : {}", response);
+
+            if (response instanceof IOException) {
+                throw (IOException) response;
+            } else if (response instanceof FlickrException) {
+                throw (FlickrException) response;
+            } else if (response instanceof SAXException) {
+                throw (SAXException) response;
+            } else if (response instanceof Throwable) {
+                Throwable throwable = (Throwable) response;
+                throw new UploadService.UploadException(
+                        throwable.getClass().getSimpleName() + ": " + throwable.getMessage(), throwable);
+            }
+
+            throw new UploadService.UploadException(
+                    "Unsupported response type: " + response.getClass().getName(), false);
+        }
+    }
+}
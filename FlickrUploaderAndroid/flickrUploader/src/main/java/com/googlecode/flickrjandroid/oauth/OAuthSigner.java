@@ -0,0 +1,204 @@
+package com.googlecode.flickrjandroid.oauth;
+
+import java.nio.charset.Charset;
+import java.security.GeneralSecurityException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+import android.text.TextUtils;
+
+import com.googlecode.flickrjandroid.FlickrException;
+import com.googlecode.flickrjandroid.Parameter;
+import com.googlecode.flickrjandroid.uploader.ImageParameter;
+import com.googlecode.flickrjandroid.util.Base64;
+
+/**
+ * Computes HMAC-SHA1 OAuth signatures for one consumer secret and token secret.
+ * <p>
+ * Each thread keeps a Mac already initialized with the key, and the base string is percent-encoded
+ * in a single StringBuilder, without going through URLEncoder for every parameter. The parameters
+ * sent unchanged with every call, like the consumer key or the token, are encoded once.
+ */
+public class OAuthSigner {
+
+	private static final String HMAC_SHA1 = "HmacSHA1";
+
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	private static final char[] HEX_DIGITS = "0123456789ABCDEF".toCharArray();
+
+	/**
+	 * Parameters whose value is the same for every call made with the same secrets
+	 */
+	private static final Set<String> CONSTANT_PARAMETERS = new HashSet<String>(Arrays.asList(OAuthInterface.PARAM_OAUTH_CONSUMER_KEY, "oauth_token", "oauth_signature_method", "oauth_version", "api_key", "format", "nojsoncallback"));
+
+	/**
+	 * Sorts by name then value, with the photo last
+	 */
+	private static final Comparator<Parameter> PARAMETER_COMPARATOR = new Comparator<Parameter>() {
+		@Override
+		public int compare(Parameter o1, Parameter o2) {
+			if (o1 instanceof ImageParameter && (o2 instanceof ImageParameter) == false) {
+				return 1;
+			}
+			if (o2 instanceof ImageParameter && (o1 instanceof ImageParameter) == false) {
+				return -1;
+			}
+
+			int result = o1.getName().compareTo(o2.getName());
+			if (result == 0) {
+				result = o1.getValue().toString().compareTo(o2.getValue().toString());
+			}
+			return result;
+		}
+	};
+
+	private static volatile OAuthSigner lastSigner;
+
+	private final String consumerSecret;
+	private final String tokenSecret;
+	private final SecretKeySpec key;
+
+	/**
+	 * The encoded name=value of the constant parameters, by name, along with the value it encodes
+	 */
+	private final ConcurrentHashMap<String, String[]> encodedConstants = new ConcurrentHashMap<String, String[]>();
+
+	private final ThreadLocal<Mac> macs = new ThreadLocal<Mac>() {
+		@Override
+		protected Mac initialValue() {
+			try {
+				Mac mac = Mac.getInstance(HMAC_SHA1);
+				mac.init(key);
+				return mac;
+			} catch (GeneralSecurityException e) {
+				throw new IllegalStateException(e);
+			}
+		}
+	};
+
+	private OAuthSigner(String consumerSecret, String tokenSecret) {
+		this.consumerSecret = consumerSecret;
+		this.tokenSecret = tokenSecret;
+		this.key = new SecretKeySpec((consumerSecret + "&" + tokenSecret).getBytes(UTF8), HMAC_SHA1);
+	}
+
+	/**
+	 * @return a signer for these secrets, the same one as last time if they didn't change
+	 */
+	public static OAuthSigner get(String consumerSecret, String tokenSecret) {
+		if (tokenSecret == null) {
+			tokenSecret = "";
+		}
+		OAuthSigner signer = lastSigner;
+		if (signer == null || !TextUtils.equals(signer.consumerSecret, consumerSecret) || !signer.tokenSecret.equals(tokenSecret)) {
+			signer = new OAuthSigner(consumerSecret, tokenSecret);
+			lastSigner = signer;
+		}
+		return signer;
+	}
+
+	/**
+	 * Sort the parameters in place, as they are then sent in that order, and sign them.
+	 *
+	 * @param url the lower case request URL
+	 */
+	public String sign(String requestMethod, String url, List<Parameter> parameters) throws FlickrException {
+		Collections.sort(parameters, PARAMETER_COMPARATOR);
+		try {
+			byte[] byteHMAC = macs.get().doFinal(getBaseString(requestMethod, url, parameters).getBytes(UTF8));
+			return new String(Base64.encode(byteHMAC));
+		} catch (IllegalStateException e) {
+			throw new FlickrException(e);
+		}
+	}
+
+	/**
+	 * @return method&amp;url&amp;parameters, each percent-encoded, the parameters once more after
+	 * being joined
+	 */
+	String getBaseString(String requestMethod, String url, List<Parameter> parameters) {
+		StringBuilder joined = new StringBuilder(256);
+		for (Parameter parameter : parameters) {
+			if (parameter instanceof ImageParameter) {
+				continue;
+			}
+			if (joined.length() > 0) {
+				joined.append('&');
+			}
+			String name = parameter.getName();
+			String value = String.valueOf(parameter.getValue());
+			if (CONSTANT_PARAMETERS.contains(name)) {
+				String[] encoded = encodedConstants.get(name);
+				if (encoded == null || !encoded[0].equals(value)) {
+					encoded = new String[] { value, encodeParameter(name, value) };
+					encodedConstants.put(name, encoded);
+				}
+				joined.append(encoded[1]);
+			} else {
+				encode(name, joined);
+				joined.append('=');
+				encode(value, joined);
+			}
+		}
+
+		StringBuilder result = new StringBuilder(requestMethod.length() + url.length() + joined.length() * 3 / 2);
+		result.append(requestMethod).append('&');
+		encode(url, result);
+		result.append('&');
+		encode(joined, result);
+		return result.toString();
+	}
+
+	private static String encodeParameter(String name, String value) {
+		StringBuilder encoded = new StringBuilder(name.length() + value.length() + 1);
+		encode(name, encoded);
+		encoded.append('=');
+		encode(value, encoded);
+		return encoded.toString();
+	}
+
+	/**
+	 * Append the RFC 3986 percent-encoding of the value, which is what
+	 * {@link com.googlecode.flickrjandroid.util.UrlUtilities#encode(String)} returns. Unreserved
+	 * characters, which make up most parameters, are copied as they are.
+	 */
+	static void encode(CharSequence value, StringBuilder out) {
+		int length = value.length();
+		for (int i = 0; i < length; i++) {
+			char c = value.charAt(i);
+			if (isUnreserved(c)) {
+				out.append(c);
+			} else if (c < 0x80) {
+				appendEscaped(c, out);
+			} else {
+				// encode the whole run of non-ASCII characters at once, to keep surrogate pairs together
+				int end = i + 1;
+				while (end < length && value.charAt(end) >= 0x80) {
+					end++;
+				}
+				for (byte b : value.subSequence(i, end).toString().getBytes(UTF8)) {
+					appendEscaped(b & 0xff, out);
+				}
+				i = end - 1;
+			}
+		}
+	}
+
+	private static boolean isUnreserved(char c) {
+		return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9')
+				|| c == '-' || c == '.' || c == '_' || c == '~';
+	}
+
+	private static void appendEscaped(int b, StringBuilder out) {
+		out.append('%').append(HEX_DIGITS[b >>> 4]).append(HEX_DIGITS[b & 0x0f]);
+	}
+}
@@ -96,20 +96,7 @@ public class OAuthUtils {
 	public static String getSignature(String requestMethod, String url, List<Parameter> parameters
 			, String apiSecret, String tokenSecret)
 	throws FlickrException {
-		String baseString;
-		try {
-			baseString = getRequestBaseString(requestMethod, url.toLowerCase(Locale.US), parameters);
-//			logger.debug("Generated OAuth Base String: {}", baseString);
-			return hmacsha1(baseString, apiSecret, tokenSecret);
-		} catch (UnsupportedEncodingException e) {
-			throw new FlickrException(e);
-		} catch (InvalidKeyException e) {
-			throw new FlickrException(e);
-		} catch (IllegalStateException e) {
-			throw new FlickrException(e);
-		} catch (NoSuchAlgorithmException e) {
-			throw new FlickrException(e);
-		}
+		return OAuthSigner.get(apiSecret, tokenSecret).sign(requestMethod, url.toLowerCase(Locale.US), parameters);
 	}
 	
 	public static String getSignature(String url, List<Parameter> parameters
@@ -0,0 +1,146 @@
+package com.googlecode.flickrjandroid.uploader;
+
+import android.util.Xml;
+
+import com.googlecode.flickrjandroid.Response;
+
+import org.json.JSONObject;
+import org.xml.sax.SAXException;
+import org.xmlpull.v1.XmlPullParser;
+import org.xmlpull.v1.XmlPullParserException;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StringReader;
+
+/**
+ * Response to an upload, read with a pull parser instead of building a DOM like
+ * {@link UploaderResponse} does.
+ * <p>
+ * The response is a tiny &lt;rsp stat="ok"&gt;&lt;photoid&gt;...&lt;/photoid&gt;&lt;/rsp&gt;, with
+ * a ticketid instead for asynchronous uploads, or an &lt;err code="..." msg="..."/&gt; on failure.
+ * Each thread keeps its parser for the next upload.
+ */
+public class UploadResponse implements Response {
+
+	private static final ThreadLocal<XmlPullParser> parsers = new ThreadLocal<XmlPullParser>() {
+		@Override
+		protected XmlPullParser initialValue() {
+			return Xml.newPullParser();
+		}
+	};
+
+	private String status;
+	private String photoId;
+	private String ticketId;
+	private String errorCode;
+	private String errorMessage;
+
+	/**
+	 * Only kept when parsed from a string, a response read from a stream is not copied
+	 */
+	private String rawResponse;
+
+	public static UploadResponse read(InputStream in) throws IOException, SAXException {
+		XmlPullParser parser = parsers.get();
+		UploadResponse response = new UploadResponse();
+		try {
+			parser.setInput(in, "UTF-8");
+			response.readFrom(parser);
+		} catch (XmlPullParserException e) {
+			throw new SAXException(e);
+		} finally {
+			release(parser);
+		}
+		return response;
+	}
+
+	private void readFrom(XmlPullParser parser) throws XmlPullParserException, IOException {
+		int eventType = parser.getEventType();
+		while (eventType != XmlPullParser.END_DOCUMENT) {
+			if (eventType == XmlPullParser.START_TAG) {
+				String name = parser.getName();
+				if ("rsp".equals(name)) {
+					status = parser.getAttributeValue(null, "stat");
+				} else if ("photoid".equals(name)) {
+					photoId = parser.nextText().trim();
+				} else if ("ticketid".equals(name)) {
+					ticketId = parser.nextText().trim();
+				} else if ("err".equals(name)) {
+					errorCode = parser.getAttributeValue(null, "code");
+					errorMessage = parser.getAttributeValue(null, "msg");
+				}
+			}
+			eventType = parser.next();
+		}
+	}
+
+	private static void release(XmlPullParser parser) {
+		try {
+			// don't keep a reference to the input until the next upload
+			parser.setInput(null);
+		} catch (XmlPullParserException e) {
+			parsers.remove();
+		}
+	}
+
+	public String getStatus() {
+		return status;
+	}
+
+	public String getPhotoId() {
+		return photoId;
+	}
+
+	public String getTicketId() {
+		return ticketId;
+	}
+
+	@Override
+	public boolean isError() {
+		return errorCode != null;
+	}
+
+	@Override
+	public String getErrorCode() {
+		return errorCode;
+	}
+
+	@Override
+	public String getErrorMessage() {
+		return errorMessage;
+	}
+
+	@Override
+	public void parse(String rawMessage) {
+		XmlPullParser parser = parsers.get();
+		try {
+			parser.setInput(new StringReader(rawMessage));
+			readFrom(parser);
+			rawResponse = rawMessage;
+		} catch (XmlPullParserException | IOException e) {
+			throw new IllegalArgumentException("Invalid upload response: " + rawMessage, e);
+		} finally {
+			release(parser);
+		}
+	}
+
+	@Override
+	public JSONObject getData() {
+		return null;
+	}
+
+	/**
+	 * @return the response as received if it was given to {@link #parse(String)}, null if it was
+	 *         {@link #read(InputStream)} without being kept
+	 */
+	@Override
+	public String getRawResponse() {
+		return rawResponse;
+	}
+
+	@Override
+	public String toString() {
+		return "stat=" + status + ", photoid=" + photoId + ", ticketid=" + ticketId + ", err=" + errorCode + " " + errorMessage;
+	}
+}
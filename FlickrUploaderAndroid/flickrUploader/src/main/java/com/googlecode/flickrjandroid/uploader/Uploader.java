@@ -61,7 +61,7 @@ public class Uploader {
 			this.apiKey = apiKey;
 			this.sharedSecret = sharedSecret;
 			this.transport = new REST(Flickr.DEFAULT_API_HOST);
-			this.transport.setResponseClass(UploaderResponse.class);
+			this.transport.setResponseClass(UploadResponse.class);
 		} catch (ParserConfigurationException e) {
 			throw new RuntimeException(e.getMessage(), e);
 		}
@@ -116,7 +116,7 @@ public class Uploader {
 		}
 		OAuthUtils.addOAuthToken(parameters);
 
-		UploaderResponse response = (UploaderResponse) transport.upload(sharedSecret, parameters);
+		UploadResponse response = (UploadResponse) transport.upload(sharedSecret, parameters);
 		if (response.isError()) {
 			throw new FlickrException(response.getErrorCode(), response.getErrorMessage());
 		}
@@ -170,9 +170,9 @@ public class Uploader {
 		parameters.add(new ImageParameter(imageName, file));
 		OAuthUtils.addOAuthToken(parameters);
 		OAuthUtils.addOAuthParams(sharedSecret, Uploader.URL_UPLOAD, parameters);
-		UploaderResponse response = (UploaderResponse) ((REST) transport).sendUpload(Uploader.UPLOAD_PATH, parameters, media);
+		UploadResponse response = (UploadResponse) ((REST) transport).sendUpload(Uploader.UPLOAD_PATH, parameters, media);
 
-//		UploaderResponse response = (UploaderResponse) ((REST) transport).upload(sharedSecret, parameters, progressListener);
+//		UploadResponse response = (UploadResponse) ((REST) transport).upload(sharedSecret, parameters, progressListener);
 		if (response.isError()) {
 			throw new FlickrException(response.getErrorCode(), response.getErrorMessage());
 		}
@@ -208,7 +208,7 @@ public class Uploader {
 		parameters.add(new ImageParameter(imageName, in));
 		OAuthUtils.addOAuthToken(parameters);
 
-		UploaderResponse response = (UploaderResponse) transport.replace(sharedSecret, parameters);
+		UploadResponse response = (UploadResponse) transport.replace(sharedSecret, parameters);
 		if (response.isError()) {
 			throw new FlickrException(response.getErrorCode(), response.getErrorMessage());
 		}
@@ -244,7 +244,7 @@ public class Uploader {
 		;
 		OAuthUtils.addOAuthToken(parameters);
 
-		UploaderResponse response = (UploaderResponse) transport.replace(sharedSecret, parameters);
+		UploadResponse response = (UploadResponse) transport.replace(sharedSecret, parameters);
 		if (response.isError()) {
 			throw new FlickrException(response.getErrorCode(), response.getErrorMessage());
 		}
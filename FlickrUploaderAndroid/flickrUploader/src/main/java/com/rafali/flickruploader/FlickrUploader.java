@@ -5,6 +5,8 @@ import android.content.Context;
 import android.os.Handler;
 
 import com.rafali.flickruploader.logging.LoggingUtils;
+import com.rafali.flickruploader.model.FileHash;
+import com.rafali.flickruploader.model.FlickrPhotoHash;
 import com.rafali.flickruploader.model.FlickrSet;
 import com.rafali.flickruploader.model.Folder;
 import com.rafali.flickruploader.model.Media;
@@ -42,6 +44,31 @@ public class FlickrUploader extends Application {
             initialMigration.createTable(FlickrSet.class);
             initialMigration.createTable(Folder.class);
             sprinkles.addMigration(initialMigration);
+
+            Migration fileHashMigration = new Migration();
+            fileHashMigration.createTable(FileHash.class);
+            sprinkles.addMigration(fileHashMigration);
+
+            Migration sha1SigMigration = new Migration();
+            sha1SigMigration.addColumnIfMissing(Media.class, "sha1Sig");
+            sprinkles.addMigration(sha1SigMigration);
+
+            Migration flickrPhotoHashMigration = new Migration();
+            flickrPhotoHashMigration.createTable(FlickrPhotoHash.class);
+            sprinkles.addMigration(flickrPhotoHashMigration);
+
+            Migration setAssignmentMigration = new Migration();
+            setAssignmentMigration.addColumnIfMissing(Media.class, "setAssignmentPending");
+            sprinkles.addMigration(setAssignmentMigration);
+
+            Migration uploadedBytesMigration = new Migration();
+            uploadedBytesMigration.addColumnIfMissing(Media.class, "uploadedBytes");
+            sprinkles.addMigration(uploadedBytesMigration);
+
+            Migration uploadTicketMigration = new Migration();
+            uploadTicketMigration.addColumnIfMissing(Media.class, "uploadTicket");
+            sprinkles.addMigration(uploadTicketMigration);
+
             Sprinkles.getDatabase();
         } catch (Exception e) {
             LOG.error("{}", e.getMessage(), e);
@@ -0,0 +1,293 @@
+package com.rafali.flickruploader.api;
+
+import com.google.common.collect.Sets;
+import com.googlecode.flickrjandroid.photos.Photo;
+import com.googlecode.flickrjandroid.photos.PhotoList;
+import com.googlecode.flickrjandroid.photos.SearchParameters;
+import com.rafali.common.STR;
+import com.rafali.flickruploader.model.FlickrPhotoHash;
+import com.rafali.flickruploader.tool.Utils;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import se.emilsjolander.sprinkles.Query;
+import se.emilsjolander.sprinkles.Transaction;
+
+/**
+ * Local index of the photos already on Flickr, by the MD5 sum in their file:md5sum machine tag, so
+ * that checking for duplicates before an upload doesn't need a search request per photo.
+ * <p>
+ * The whole photo stream is fetched once, then only the photos uploaded since the last refresh.
+ * Flickr returns at most 4000 results for a search, so larger streams are fetched in windows of
+ * upload dates, each one ending where the previous one stopped. Refreshes run in the background,
+ * uploads meanwhile fall back to searching Flickr.
+ */
+class DedupIndex {
+
+	private static final Logger LOG = LoggerFactory.getLogger(DedupIndex.class);
+
+	private static final String MD5_TAG_PREFIX = "file:md5sum=";
+
+	private static final Set<String> EXTRAS = Sets.newHashSet("machine_tags", "date_upload");
+
+	private static final int PER_PAGE = 500;
+
+	/**
+	 * Flickr doesn't return more results than this for a search, whatever the page
+	 */
+	private static final int MAX_SEARCH_RESULTS = 4000;
+
+	private static final long REFRESH_INTERVAL_MS = 10 * 60 * 1000L;
+
+	/**
+	 * Overlap between incremental refreshes, in case of clock differences with Flickr
+	 */
+	private static final long REFRESH_MARGIN_MS = 3600 * 1000L;
+
+	/**
+	 * Start of the last refresh that went through all the photos uploaded since the previous one,
+	 * or the whole stream for the first one
+	 */
+	private static final String LAST_REFRESH = "dedupIndexLastRefresh";
+
+	/**
+	 * Whether the first refresh went through the whole stream, so that a photo missing from the
+	 * index really isn't on Flickr
+	 */
+	private static final String COMPLETE = "dedupIndexComplete";
+
+	private static final ExecutorService executor = Executors.newSingleThreadExecutor();
+
+	private static Map<String, FlickrPhotoHash> photoHashes;
+	private static long lastRefreshAttempt = 0;
+	private static boolean refreshing = false;
+
+	/**
+	 * Incremented when the index is cleared, so that a refresh running meanwhile stops adding to it
+	 */
+	private static int generation = 0;
+
+	private DedupIndex() {
+	}
+
+	/**
+	 * @return the photo on Flickr with this MD5 sum, or null if there is none. Falls back to a
+	 * Flickr search when the index can't be trusted to be complete, or is being refreshed.
+	 */
+	static Photo find(String md5Sum) throws Exception {
+		if (claimRefresh()) {
+			executor.execute(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						refresh();
+					} catch (Exception e) {
+						LOG.warn("Refreshing the dedup index failed, will search Flickr", e);
+					} finally {
+						synchronized (DedupIndex.class) {
+							refreshing = false;
+						}
+					}
+				}
+			});
+		}
+
+		FlickrPhotoHash photoHash;
+		boolean trusted;
+		synchronized (DedupIndex.class) {
+			photoHash = getPhotoHashes().get(md5Sum);
+			trusted = !refreshing && isComplete();
+		}
+		if (photoHash != null) {
+			Photo photo = new Photo();
+			photo.setId(photoHash.getFlickrId());
+			photo.setSecret(photoHash.getSecret());
+			return photo;
+		}
+
+		if (trusted) {
+			return null;
+		}
+
+		SearchParameters params = new SearchParameters();
+		params.setUserId(Utils.getStringProperty(STR.userId));
+		params.setMachineTags(new String[] { MD5_TAG_PREFIX + md5Sum });
+		PhotoList photoList = FlickrApi.get().getStreamingInterface().search(params, 1, 1);
+		if (photoList.isEmpty()) {
+			return null;
+		}
+		Photo photo = photoList.get(0);
+		put(md5Sum, photo.getId(), photo.getSecret());
+		return photo;
+	}
+
+	private static synchronized boolean claimRefresh() {
+		if (refreshing || System.currentTimeMillis() - lastRefreshAttempt <= REFRESH_INTERVAL_MS) {
+			return false;
+		}
+		lastRefreshAttempt = System.currentTimeMillis();
+		refreshing = true;
+		return true;
+	}
+
+	static synchronized void put(String md5Sum, String flickrId, String secret) {
+		FlickrPhotoHash photoHash = new FlickrPhotoHash(md5Sum, flickrId, secret);
+		photoHash.save();
+		getPhotoHashes().put(md5Sum, photoHash);
+	}
+
+	/**
+	 * Forget a photo that turned out to be no longer on Flickr.
+	 */
+	static synchronized void remove(String md5Sum) {
+		FlickrPhotoHash photoHash = getPhotoHashes().remove(md5Sum);
+		if (photoHash != null) {
+			photoHash.delete();
+		}
+	}
+
+	/**
+	 * Forget everything, for when the user logs out.
+	 */
+	static synchronized void clear() {
+		Transaction t = new Transaction();
+		try {
+			for (FlickrPhotoHash photoHash : getPhotoHashes().values()) {
+				photoHash.delete(t);
+			}
+			t.setSuccessful(true);
+		} finally {
+			t.finish();
+		}
+		photoHashes.clear();
+		generation++;
+		Utils.setLongProperty(LAST_REFRESH, 0L);
+		Utils.setBooleanProperty(COMPLETE, false);
+		lastRefreshAttempt = 0;
+	}
+
+	private static boolean isComplete() {
+		return Utils.getBooleanProperty(COMPLETE, false);
+	}
+
+	private static Map<String, FlickrPhotoHash> getPhotoHashes() {
+		if (photoHashes == null) {
+			photoHashes = new HashMap<>();
+			for (FlickrPhotoHash photoHash : Query.all(FlickrPhotoHash.class).get()) {
+				photoHashes.put(photoHash.getMd5Sum(), photoHash);
+			}
+		}
+		return photoHashes;
+	}
+
+	/**
+	 * Page through the photos uploaded since the last refresh, or the whole stream if there was
+	 * none, newest first.
+	 */
+	private static void refresh() throws Exception {
+		long start = System.currentTimeMillis();
+		long lastRefresh = Utils.getLongProperty(LAST_REFRESH);
+		int startGeneration;
+		synchronized (DedupIndex.class) {
+			startGeneration = generation;
+		}
+		int nbWindows = 0;
+		int nbPages = 0;
+		int count = 0;
+		Date maxUploadDate = null;
+		while (true) {
+			nbWindows++;
+			int page = 1;
+			int totalPage = 1;
+			int total = 0;
+			Date oldest = null;
+			while (page <= totalPage) {
+				SearchParameters params = new SearchParameters();
+				params.setUserId(Utils.getStringProperty(STR.userId));
+				params.setMachineTags(new String[] { MD5_TAG_PREFIX });
+				params.setSort(SearchParameters.DATE_POSTED_DESC);
+				params.setExtras(EXTRAS);
+				if (lastRefresh > 0) {
+					params.setMinUploadDate(new Date(lastRefresh - REFRESH_MARGIN_MS));
+				}
+				if (maxUploadDate != null) {
+					params.setMaxUploadDate(maxUploadDate);
+				}
+				PhotoList photoList = FlickrApi.get().getStreamingInterface().search(params, PER_PAGE, page);
+				nbPages++;
+				totalPage = Math.min(photoList.getPages(), (MAX_SEARCH_RESULTS + PER_PAGE - 1) / PER_PAGE);
+				total = photoList.getTotal();
+				if (photoList.isEmpty()) {
+					break;
+				}
+				if (!index(photoList, startGeneration)) {
+					LOG.info("dedup index cleared during refresh");
+					return;
+				}
+				oldest = photoList.get(photoList.size() - 1).getDatePosted();
+				count += photoList.size();
+				page++;
+			}
+
+			if (total <= MAX_SEARCH_RESULTS) {
+				break;
+			}
+			// the rest of the stream is older than what this window returned, the last second is
+			// fetched again in case it holds more photos than were returned
+			if (oldest == null || (maxUploadDate != null && !oldest.before(maxUploadDate))) {
+				LOG.warn("can't page past {} photos uploaded around {}, the dedup index stays incomplete", total, oldest);
+				return;
+			}
+			maxUploadDate = oldest;
+		}
+
+		int nbIndexed;
+		synchronized (DedupIndex.class) {
+			if (generation != startGeneration) {
+				return;
+			}
+			if (lastRefresh == 0) {
+				Utils.setBooleanProperty(COMPLETE, true);
+			}
+			Utils.setLongProperty(LAST_REFRESH, start);
+			nbIndexed = getPhotoHashes().size();
+		}
+		LOG.debug("{} photos fetched in {} pages and {} windows in {}ms, {} photos indexed", count, nbPages, nbWindows,
+				System.currentTimeMillis() - start, nbIndexed);
+	}
+
+	/**
+	 * @return false if the index was cleared since the refresh started
+	 */
+	private static synchronized boolean index(PhotoList photoList, int startGeneration) {
+		if (generation != startGeneration) {
+			return false;
+		}
+		Map<String, FlickrPhotoHash> photoHashes = getPhotoHashes();
+		Transaction t = new Transaction();
+		try {
+			for (Photo photo : photoList) {
+				for (String tag : photo.getMachineTags()) {
+					if (tag.startsWith(MD5_TAG_PREFIX)) {
+						String md5Sum = tag.substring(MD5_TAG_PREFIX.length());
+						FlickrPhotoHash photoHash = new FlickrPhotoHash(md5Sum, photo.getId(), photo.getSecret());
+						photoHash.save(t);
+						photoHashes.put(md5Sum, photoHash);
+					}
+				}
+			}
+			t.setSuccessful(true);
+		} finally {
+			t.finish();
+		}
+		return true;
+	}
+}
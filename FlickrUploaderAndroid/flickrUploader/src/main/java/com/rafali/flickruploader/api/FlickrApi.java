@@ -18,8 +18,10 @@ import com.rafali.common.STR;
 import com.rafali.common.ToolString;
 import com.rafali.flickruploader.enums.CAN_UPLOAD;
 import com.rafali.flickruploader.enums.PRIVACY;
+import com.rafali.flickruploader.enums.STATUS;
 import com.rafali.flickruploader.model.FlickrSet;
 import com.rafali.flickruploader.model.Media;
+import com.rafali.flickruploader.model.MediaWriter;
 import com.rafali.flickruploader.service.UploadService.UploadException;
 import com.rafali.flickruploader.tool.Utils;
 import com.rafali.flickruploader.ui.activity.FlickrUploaderActivity;
@@ -32,7 +34,6 @@ import java.io.File;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
-import java.util.Date;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
@@ -73,6 +74,13 @@ public class FlickrApi {
 	public static void reset() {
 		auth = null;
 		updateOauth();
+		executorService.execute(new Runnable() {
+			@Override
+			public void run() {
+				// The index belongs to the previous user
+				DedupIndex.clear();
+			}
+		});
 	}
 
 	private static void updateOauth() {
@@ -134,8 +142,19 @@ public class FlickrApi {
 						List<Media> medias = Utils.loadMedia(true);
 						Collections.reverse(medias);
 						final Map<String, Media> hashMedia = new ConcurrentHashMap<String, Media>();
-						for (Media media : medias) {
-							hashMedia.put(media.getSha1Tag(), media);
+						Transaction sha1Transaction = new Transaction();
+						try {
+							for (Media media : medias) {
+								boolean sha1Known = media.hasSha1Sig();
+								hashMedia.put(media.getSha1Tag(), media);
+								if (!sha1Known) {
+									// Only computed once per file, keep it for the next sync
+									media.save(sha1Transaction);
+								}
+							}
+							sha1Transaction.setSuccessful(true);
+						} finally {
+							sha1Transaction.finish();
 						}
 						final Map<String, String> uploadedPhotos = new ConcurrentHashMap<String, String>();
 						final Map<String, PRIVACY> photosPrivacy = new ConcurrentHashMap<String, PRIVACY>();
@@ -153,7 +172,7 @@ public class FlickrApi {
 							params.setMachineTags(new String[] { "file:sha1sig=" });
 							params.setSort(SearchParameters.DATE_POSTED_DESC);
 							params.setExtras(EXTRAS_MACHINE_TAGS);
-							final PhotoList photoList = FlickrApi.get().getPhotosInterface().search(params, per_page, page);
+							final PhotoList photoList = FlickrApi.get().getStreamingInterface().search(params, per_page, page);
 							totalPage = photoList.getPages();
 							per_page = photoList.getPerPage();
 							count += photoList.size();
@@ -243,6 +262,13 @@ public class FlickrApi {
 			media.setFlickrSetTitle(STR.instantUpload);
 		}
 		try {
+			if (media.getUploadTicket() != null) {
+				LOG.debug("already uploaded, waiting for ticket " + media.getUploadTicket() + " : " + media.getPath());
+				media.setStatus(STATUS.PROCESSING);
+				MediaWriter.save(media);
+				TicketPoller.schedule();
+				return;
+			}
 			if (media.getFlickrId() == null) {
 				String extension = getExtension(media);
 				if (unsupportedExtensions.contains(extension)) {
@@ -261,20 +287,29 @@ public class FlickrApi {
 				}
 				String md5tag = media.getMd5Tag();
 				String sha1tag = media.getSha1Tag();
-				SearchParameters params = new SearchParameters();
-				params.setUserId(Utils.getStringProperty(STR.userId));
-				params.setMachineTags(new String[] { md5tag });
-				PhotoList photoList = FlickrApi.get().getPhotosInterface().search(params, 1, 1);
-				if (!photoList.isEmpty()) {
-					LOG.warn("already uploaded : " + photoList.get(0).getId() + " = " + md5tag + " = " + uri);
-					Photo photo = photoList.get(0);
+				Photo photo = DedupIndex.find(media.getMd5Sum());
+				Photo photoInfo = null;
+				if (photo != null) {
+					try {
+						photoInfo = FlickrApi.get().getStreamingInterface().getInfo(photo.getId(), photo.getSecret());
+					} catch (FlickrException e) {
+						if ("1".equals(e.getErrorCode())) {
+							LOG.info(photo.getId() + " = " + md5tag + " is no longer on flickr, uploading it again");
+							DedupIndex.remove(media.getMd5Sum());
+							photo = null;
+						} else {
+							throw e;
+						}
+					}
+				}
+				if (photo != null) {
+					LOG.warn("already uploaded : " + photo.getId() + " = " + md5tag + " = " + uri);
 					String flickrPhotoId = photo.getId();
 					media.setFlickrId(flickrPhotoId);
-					media.save();
-					photo = FlickrApi.get().getPhotosInterface().getInfo(flickrPhotoId, photo.getSecret());
-					if (photo != null) {
+					MediaWriter.save(media);
+					if (photoInfo != null) {
 						List<String> tagstr = new ArrayList<String>();
-						Collection<Tag> tags = photo.getTags();
+						Collection<Tag> tags = photoInfo.getTags();
 						for (Tag tag : tags) {
 							String value = tag.getValue();
 							if (value.startsWith("file:sha1sig=") && !value.equals(sha1tag)) {
@@ -309,60 +344,33 @@ public class FlickrApi {
 						tags.add(custom_tags);
 					}
 					metaData.setTags(tags);
+					metaData.setAsync(Utils.isAsyncUpload());
 					long start = System.currentTimeMillis();
-					String flickrPhotoId = FlickrApi.get().getUploader().upload(media.getName(), file, metaData, media);
-					LOG.debug("photo uploaded in " + (System.currentTimeMillis() - start) + "ms : " + flickrPhotoId);
-					media.setFlickrId(flickrPhotoId);
-					media.setPrivacy(privacy);
-					media.save();
+					String id = FlickrApi.get().getUploader().upload(media.getName(), file, metaData, media);
+					if (metaData.isAsync()) {
+						// Flickr processes the file in the background, the ticket tells when it is done
+						LOG.debug("photo sent in " + (System.currentTimeMillis() - start) + "ms : ticket " + id);
+						media.setUploadTicket(id);
+						// before the poller can see the ticket, which may resolve it right away
+						media.setStatus(STATUS.PROCESSING);
+						media.setTimestampUploaded(System.currentTimeMillis());
+						media.setPrivacy(privacy);
+						MediaWriter.save(media);
+						TicketPoller.schedule();
+					} else {
+						LOG.debug("photo uploaded in " + (System.currentTimeMillis() - start) + "ms : " + id);
+						DedupIndex.put(media.getMd5Sum(), id, null);
+						media.setFlickrId(id);
+						media.setPrivacy(privacy);
+						MediaWriter.save(media);
+					}
 
 				}
 			}
 			if (media.getFlickrId() != null) {
-				Map<String, FlickrSet> photoSets = getPhotoSets(false);
-				FlickrSet flickrSet = photoSets.get(media.getFlickrSetTitle());
-				if (flickrSet == null) {
-					photoSets = getPhotoSets(true);
-					flickrSet = photoSets.get(media.getFlickrSetTitle());
-				}
-				try {
-					if (flickrSet != null && flickrSet.getId().equals(media.getFlickrSetId())) {
-						LOG.info(media.getFlickrId() + " photo is already in set " + flickrSet + ", no need to call API");
-					} else if (flickrSet == null) {
-						Photoset photoset = FlickrApi.get().getPhotosetsInterface().create(media.getFlickrSetTitle(), Utils.getUploadDescription(), media.getFlickrId());
-						flickrSet = new FlickrSet(photoset.getId(), photoset.getTitle());
-						flickrSet.save();
-						flickrSet.setSize(1);
-						if (cachedPhotoSets != null) {
-							cachedPhotoSets.put(flickrSet.getName(), flickrSet);
-						}
-					} else {
-						FlickrApi.get().getPhotosetsInterface().addPhoto(flickrSet.getId(), media.getFlickrId());
-					}
-				} catch (FlickrException fe) {
-					if ("1".equals(fe.getErrorCode())) {
-						LOG.warn("photosetId : " + flickrSet + " not found, photo will not be saved in a set");
-						cachedPhotoSets = null;
-					} else if ("3".equals(fe.getErrorCode())) {
-						LOG.info(media.getFlickrId() + " photo is already in set " + flickrSet);
-					} else {
-						throw fe;
-					}
-				}
-				if (flickrSet == null) {
-					throw new UploadException("failed to add to photoset", true);
-				} else {
-					media.setFlickrSetId(flickrSet.getId());
-					media.save();
-				}
-				try {
-					if (System.currentTimeMillis() - media.getTimestampCreated() > 30 * 60 * 1000L) {
-						Date date = new Date(media.getTimestampCreated());
-						FlickrApi.get().getPhotosInterface().setDates(media.getFlickrId(), date, date, "0");
-					}
-				} catch (Exception e) {
-					LOG.warn("Timestamping photo failed, ignoring...", e);
-				}
+				media.setSetAssignmentPending(true);
+				MediaWriter.save(media);
+				PhotoSetAssigner.schedule();
 			}
 
 		} catch (FlickrException e) {
@@ -467,7 +475,7 @@ public class FlickrApi {
 
 	static Map<String, FlickrSet> cachedPhotoSets;
 
-	public static Map<String, FlickrSet> getPhotoSets(boolean refresh) {
+	public static synchronized Map<String, FlickrSet> getPhotoSets(boolean refresh) {
 		Map<String, FlickrSet> photoSets = new HashMap<String, FlickrSet>();
 		try {
 			CursorList<FlickrSet> cursorList = null;
@@ -485,7 +493,7 @@ public class FlickrApi {
 				int retry = 0;
 				while (photosets == null && retry < 3) {
 					try {
-						photosets = FlickrApi.get().getPhotosetsInterface().getList(Utils.getStringProperty(STR.userId)).getPhotosets();
+						photosets = FlickrApi.get().getStreamingInterface().getPhotosets(Utils.getStringProperty(STR.userId));
 					} catch (Exception e) {
 						LOG.error("FIXME: Log message missing", e);
 						try {
@@ -541,7 +549,7 @@ public class FlickrApi {
 			int retry = 0;
 			while (photoList == null && retry < 3) {
 				try {
-					photoList = FlickrApi.get().getPhotosInterface().search(params, 1, 1);
+					photoList = FlickrApi.get().getStreamingInterface().search(params, 1, 1);
 					if (photoList != null && !photoList.isEmpty()) {
 						Photo photo = photoList.get(0);
 						LOG.warn(media + " is uploaded : " + photo.getId() + " = " + md5tag);
@@ -0,0 +1,230 @@
+package com.rafali.flickruploader.api;
+
+import com.googlecode.flickrjandroid.FlickrException;
+import com.googlecode.flickrjandroid.photosets.Photoset;
+import com.rafali.common.STR;
+import com.rafali.flickruploader.model.FlickrSet;
+import com.rafali.flickruploader.model.Media;
+import com.rafali.flickruploader.model.MediaWriter;
+import com.rafali.flickruploader.tool.Utils;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import se.emilsjolander.sprinkles.Query;
+
+/**
+ * Adds uploaded photos to their photo set and fixes their dates, off the upload path.
+ * <p>
+ * Uploads only mark their media as pending, which is saved in the database so that nothing is
+ * lost if the app is killed. Pending medias are then handled in batches: photos going to a set
+ * the batch just created are added with a single photosets.editPhotos call, others one by one with
+ * a paced photosets.addPhoto.
+ */
+public class PhotoSetAssigner {
+
+	private static final Logger LOG = LoggerFactory.getLogger(PhotoSetAssigner.class);
+
+	/**
+	 * How long to wait for more uploads before handling a batch
+	 */
+	private static final long BATCH_DELAY_MS = 5_000;
+
+	private static final long RETRY_DELAY_MS = 60_000;
+
+	/**
+	 * Pause between two addPhoto calls, to stay well below the API rate limit
+	 */
+	private static final long ADD_PHOTO_INTERVAL_MS = 1_000;
+
+	/**
+	 * Below this, editPhotos is not worth it
+	 */
+	private static final int EDIT_PHOTOS_MIN_BATCH = 4;
+
+	/**
+	 * Keeps the list of photos sent to editPhotos reasonable
+	 */
+	private static final int EDIT_PHOTOS_MAX_SET_SIZE = 500;
+
+	private static final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor();
+
+	private static boolean scheduled = false;
+
+	private PhotoSetAssigner() {
+	}
+
+	/**
+	 * Handle the pending medias soon, in a single batch with whatever else gets uploaded meanwhile.
+	 */
+	public static void schedule() {
+		schedule(BATCH_DELAY_MS);
+	}
+
+	private static synchronized void schedule(long delayMs) {
+		if (scheduled) {
+			return;
+		}
+		scheduled = true;
+		executor.schedule(new Runnable() {
+			@Override
+			public void run() {
+				synchronized (PhotoSetAssigner.class) {
+					scheduled = false;
+				}
+				boolean done = false;
+				try {
+					done = assignPending();
+				} catch (Exception e) {
+					LOG.error("Assigning photo sets failed", e);
+				}
+				if (!done) {
+					schedule(RETRY_DELAY_MS);
+				}
+			}
+		}, delayMs, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * @return true if no media is left pending
+	 */
+	private static boolean assignPending() throws Exception {
+		if (!FlickrApi.isAuthentified()) {
+			return true;
+		}
+
+		// for the query to see the pending changes
+		MediaWriter.flush();
+		List<Media> pending = Query.many(Media.class, "select * from Media where setAssignmentPending=1 order by timestampCreated asc").get().asList();
+		if (pending.isEmpty()) {
+			return true;
+		}
+		LOG.debug("{} medias waiting to be added to their set", pending.size());
+
+		Map<String, List<Media>> mediasBySetTitle = new LinkedHashMap<>();
+		for (Media media : pending) {
+			String title = media.getFlickrSetTitle() == null ? STR.instantUpload : media.getFlickrSetTitle();
+			List<Media> setMedias = mediasBySetTitle.get(title);
+			if (setMedias == null) {
+				setMedias = new ArrayList<>();
+				mediasBySetTitle.put(title, setMedias);
+			}
+			setMedias.add(media);
+		}
+
+		boolean done = true;
+		for (Map.Entry<String, List<Media>> entry : mediasBySetTitle.entrySet()) {
+			try {
+				assign(entry.getKey(), entry.getValue());
+			} catch (Exception e) {
+				LOG.warn("Adding " + entry.getValue().size() + " photos to " + entry.getKey() + " failed, will retry", e);
+				done = false;
+			}
+		}
+		MediaWriter.flush();
+		return done;
+	}
+
+	private static void assign(String title, List<Media> medias) throws Exception {
+		FlickrSet flickrSet = FlickrApi.getPhotoSets(false).get(title);
+		if (flickrSet == null) {
+			flickrSet = FlickrApi.getPhotoSets(true).get(title);
+		}
+
+		List<Media> toAdd = new ArrayList<>();
+		// the primary photo of a set created by this batch, which holds nothing else yet
+		String createdWithPhotoId = null;
+		for (Media media : medias) {
+			if (flickrSet != null && flickrSet.getId().equals(media.getFlickrSetId())) {
+				LOG.info(media.getFlickrId() + " photo is already in set " + flickrSet + ", no need to call API");
+				onAssigned(media, flickrSet);
+			} else if (flickrSet == null) {
+				Photoset photoset = FlickrApi.get().getPhotosetsInterface().create(title, Utils.getUploadDescription(), media.getFlickrId());
+				flickrSet = new FlickrSet(photoset.getId(), photoset.getTitle());
+				flickrSet.save();
+				flickrSet.setSize(1);
+				createdWithPhotoId = media.getFlickrId();
+				if (FlickrApi.cachedPhotoSets != null) {
+					FlickrApi.cachedPhotoSets.put(flickrSet.getName(), flickrSet);
+				}
+				onAssigned(media, flickrSet);
+			} else {
+				toAdd.add(media);
+			}
+		}
+		if (toAdd.isEmpty()) {
+			return;
+		}
+
+		try {
+			if (createdWithPhotoId != null && toAdd.size() >= EDIT_PHOTOS_MIN_BATCH && toAdd.size() < EDIT_PHOTOS_MAX_SET_SIZE) {
+				editPhotos(flickrSet, createdWithPhotoId, toAdd);
+				return;
+			}
+			for (Media media : toAdd) {
+				try {
+					FlickrApi.get().getPhotosetsInterface().addPhoto(flickrSet.getId(), media.getFlickrId());
+				} catch (FlickrException fe) {
+					if (!"3".equals(fe.getErrorCode())) {
+						throw fe;
+					}
+					LOG.info(media.getFlickrId() + " photo is already in set " + flickrSet);
+				}
+				onAssigned(media, flickrSet);
+				Thread.sleep(ADD_PHOTO_INTERVAL_MS);
+			}
+		} catch (FlickrException fe) {
+			if ("1".equals(fe.getErrorCode())) {
+				LOG.warn("photosetId : " + flickrSet + " not found, will look for it again");
+				FlickrApi.cachedPhotoSets = null;
+			}
+			throw fe;
+		}
+	}
+
+	/**
+	 * Add all the medias in one call to a set this batch just created with its primary photo.
+	 * <p>
+	 * editPhotos replaces the whole content of the set with the list we send, so a photo another
+	 * client added to an existing set would be removed. It is only used for a set nobody else has
+	 * seen yet, existing sets get their photos one by one.
+	 */
+	private static void editPhotos(FlickrSet flickrSet, String primaryPhotoId, List<Media> medias) throws Exception {
+		Set<String> photoIds = new LinkedHashSet<>(medias.size() + 1);
+		photoIds.add(primaryPhotoId);
+		for (Media media : medias) {
+			photoIds.add(media.getFlickrId());
+		}
+		FlickrApi.get().getPhotosetsInterface().editPhotos(flickrSet.getId(), primaryPhotoId, photoIds.toArray(new String[photoIds.size()]));
+		LOG.debug("{} photos added to {} with a single call", medias.size(), flickrSet);
+		flickrSet.setSize(photoIds.size());
+		for (Media media : medias) {
+			onAssigned(media, flickrSet);
+		}
+	}
+
+	private static void onAssigned(Media media, FlickrSet flickrSet) {
+		try {
+			if (System.currentTimeMillis() - media.getTimestampCreated() > 30 * 60 * 1000L) {
+				Date date = new Date(media.getTimestampCreated());
+				FlickrApi.get().getPhotosInterface().setDates(media.getFlickrId(), date, date, "0");
+			}
+		} catch (Exception e) {
+			LOG.warn("Timestamping photo failed, ignoring...", e);
+		}
+		media.setFlickrSetId(flickrSet.getId());
+		media.setSetAssignmentPending(false);
+		MediaWriter.save(media);
+	}
+}
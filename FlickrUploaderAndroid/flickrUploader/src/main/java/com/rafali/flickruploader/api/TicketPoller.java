@@ -0,0 +1,165 @@
+package com.rafali.flickruploader.api;
+
+import com.googlecode.flickrjandroid.photos.upload.Ticket;
+import com.rafali.flickruploader.enums.STATUS;
+import com.rafali.flickruploader.model.Media;
+import com.rafali.flickruploader.model.MediaWriter;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import se.emilsjolander.sprinkles.Query;
+
+/**
+ * Follows asynchronous uploads until Flickr has processed them.
+ * <p>
+ * An asynchronous upload returns as soon as the file is received, with a ticket saved on its
+ * media. All outstanding tickets are then checked with a single photos.upload.checkTickets call
+ * until each one has a photo id, at which point the media is handed over to
+ * {@link PhotoSetAssigner}. Tickets are checked a page after the other, and a ticket Flickr has not
+ * processed after {@link #TICKET_TIMEOUT_MS} is given up.
+ */
+public class TicketPoller {
+
+	private static final Logger LOG = LoggerFactory.getLogger(TicketPoller.class);
+
+	/**
+	 * Flickr usually needs a few seconds for a photo, longer for a video
+	 */
+	private static final long POLL_DELAY_MS = 5_000;
+
+	private static final long RETRY_DELAY_MS = 60_000;
+
+	/**
+	 * Tickets checked in a single call, to keep the request URL reasonable
+	 */
+	private static final int MAX_TICKETS_PER_CALL = 100;
+
+	/**
+	 * Far longer than Flickr takes even for a big video. The media then fails, and is uploaded again
+	 * if retried.
+	 */
+	private static final long TICKET_TIMEOUT_MS = 2 * 3600 * 1000L;
+
+	private static final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor();
+
+	private static boolean scheduled = false;
+
+	/**
+	 * Id of the last media of the previous page, so that the next call checks the following tickets
+	 * instead of the same ones still being processed, 0 to start over. Only used by the executor.
+	 */
+	private static int cursorId = 0;
+
+	private TicketPoller() {
+	}
+
+	/**
+	 * Check the outstanding tickets soon, along with any other ticket received meanwhile.
+	 */
+	public static void schedule() {
+		schedule(POLL_DELAY_MS);
+	}
+
+	private static synchronized void schedule(long delayMs) {
+		if (scheduled) {
+			return;
+		}
+		scheduled = true;
+		executor.schedule(new Runnable() {
+			@Override
+			public void run() {
+				synchronized (TicketPoller.class) {
+					scheduled = false;
+				}
+				long delayMs = POLL_DELAY_MS;
+				boolean done = false;
+				try {
+					done = checkTickets();
+				} catch (Exception e) {
+					LOG.error("Checking upload tickets failed", e);
+					delayMs = RETRY_DELAY_MS;
+				}
+				if (!done) {
+					schedule(delayMs);
+				}
+			}
+		}, delayMs, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * @return true if no ticket is left outstanding
+	 */
+	private static boolean checkTickets() throws Exception {
+		if (!FlickrApi.isAuthentified()) {
+			return true;
+		}
+
+		// for the query to see the pending changes
+		MediaWriter.flush();
+		boolean fromStart = cursorId == 0;
+		List<Media> medias = Query.many(Media.class, "select * from Media where uploadTicket is not null and id > ? order by id asc limit " + MAX_TICKETS_PER_CALL, cursorId).get().asList();
+		cursorId = medias.size() < MAX_TICKETS_PER_CALL ? 0 : medias.get(medias.size() - 1).getId();
+		if (medias.isEmpty()) {
+			return fromStart;
+		}
+
+		Map<String, Media> mediasByTicket = new HashMap<>();
+		for (Media media : medias) {
+			mediasByTicket.put(media.getUploadTicket(), media);
+		}
+		List<Ticket> tickets = FlickrApi.get().getStreamingInterface().checkTickets(new ArrayList<>(mediasByTicket.keySet()));
+
+		int nbCompleted = 0;
+		int nbFailed = 0;
+		for (Ticket ticket : tickets) {
+			Media media = mediasByTicket.remove(ticket.getTicketId());
+			if (media == null) {
+				continue;
+			}
+			if (ticket.hasCompleted() && ticket.getPhotoId() != null) {
+				LOG.debug("ticket " + ticket.getTicketId() + " processed : " + ticket.getPhotoId());
+				DedupIndex.put(media.getMd5Sum(), ticket.getPhotoId(), null);
+				media.setFlickrId(ticket.getPhotoId());
+				media.setUploadTicket(null);
+				media.setSetAssignmentPending(true);
+				MediaWriter.save(media);
+				nbCompleted++;
+			} else if (ticket.hasFailed() || ticket.isInvalid()) {
+				LOG.warn("ticket " + ticket.getTicketId() + " failed for " + media.getPath());
+				media.setUploadTicket(null);
+				media.setErrorMessage("Flickr could not process " + media.getPath());
+				media.setStatus(STATUS.FAILED);
+				MediaWriter.save(media);
+				nbFailed++;
+			} else {
+				// still processing
+				mediasByTicket.put(ticket.getTicketId(), media);
+			}
+		}
+		long now = System.currentTimeMillis();
+		for (Media media : mediasByTicket.values()) {
+			if (now - media.getTimestampUploaded() > TICKET_TIMEOUT_MS) {
+				LOG.warn("ticket " + media.getUploadTicket() + " not processed in time for " + media.getPath());
+				media.setUploadTicket(null);
+				media.setErrorMessage("Flickr did not process " + media.getPath() + " in time");
+				media.setStatus(STATUS.FAILED);
+				MediaWriter.save(media);
+				nbFailed++;
+			}
+		}
+		MediaWriter.flush();
+		if (nbCompleted > 0) {
+			PhotoSetAssigner.schedule();
+		}
+		return fromStart && medias.size() < MAX_TICKETS_PER_CALL && nbCompleted + nbFailed == medias.size();
+	}
+}
@@ -6,5 +6,9 @@ public class STATUS {
 	public static int PAUSED = 0;
 	public static int IMPORTED = 10;
 	public static int QUEUED = 100;
+	/**
+	 * Sent asynchronously, Flickr has not given the photo id yet
+	 */
+	public static int PROCESSING = 500;
 	public static int UPLOADED = 1000;
 }
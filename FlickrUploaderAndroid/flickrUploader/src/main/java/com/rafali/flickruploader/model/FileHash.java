@@ -0,0 +1,61 @@
+package com.rafali.flickruploader.model;
+
+import se.emilsjolander.sprinkles.Model;
+import se.emilsjolander.sprinkles.annotations.Column;
+import se.emilsjolander.sprinkles.annotations.PrimaryKey;
+import se.emilsjolander.sprinkles.annotations.Table;
+
+/**
+ * The MD5 sum of a file, valid as long as the file keeps the same size and modification time.
+ */
+@Table("FileHash")
+public class FileHash extends Model {
+
+	@PrimaryKey
+	@Column("path")
+	private String path;
+
+	@Column("size")
+	private long size;
+
+	@Column("lastModified")
+	private long lastModified;
+
+	@Column("md5Sum")
+	private String md5Sum;
+
+	public FileHash() {
+	}
+
+	public FileHash(String path, long size, long lastModified, String md5Sum) {
+		this.path = path;
+		this.size = size;
+		this.lastModified = lastModified;
+		this.md5Sum = md5Sum;
+	}
+
+	@Override
+	public String toString() {
+		return path + ":" + size + ":" + lastModified + ":" + md5Sum;
+	}
+
+	public String getPath() {
+		return path;
+	}
+
+	public long getSize() {
+		return size;
+	}
+
+	public long getLastModified() {
+		return lastModified;
+	}
+
+	public String getMd5Sum() {
+		return md5Sum;
+	}
+
+	public boolean matches(long size, long lastModified) {
+		return this.size == size && this.lastModified == lastModified;
+	}
+}
@@ -0,0 +1,49 @@
+package com.rafali.flickruploader.model;
+
+import se.emilsjolander.sprinkles.Model;
+import se.emilsjolander.sprinkles.annotations.Column;
+import se.emilsjolander.sprinkles.annotations.PrimaryKey;
+import se.emilsjolander.sprinkles.annotations.Table;
+
+/**
+ * A photo of the user's Flickr stream, by the MD5 sum from its file:md5sum machine tag.
+ */
+@Table("FlickrPhotoHash")
+public class FlickrPhotoHash extends Model {
+
+	@PrimaryKey
+	@Column("md5Sum")
+	private String md5Sum;
+
+	@Column("flickrId")
+	private String flickrId;
+
+	@Column("secret")
+	private String secret;
+
+	public FlickrPhotoHash() {
+	}
+
+	public FlickrPhotoHash(String md5Sum, String flickrId, String secret) {
+		this.md5Sum = md5Sum;
+		this.flickrId = flickrId;
+		this.secret = secret;
+	}
+
+	@Override
+	public String toString() {
+		return md5Sum + ":" + flickrId;
+	}
+
+	public String getMd5Sum() {
+		return md5Sum;
+	}
+
+	public String getFlickrId() {
+		return flickrId;
+	}
+
+	public String getSecret() {
+		return secret;
+	}
+}
@@ -6,12 +6,13 @@ import com.rafali.common.ToolString;
 import com.rafali.flickruploader.enums.MEDIA_TYPE;
 import com.rafali.flickruploader.enums.PRIVACY;
 import com.rafali.flickruploader.enums.STATUS;
+import com.rafali.flickruploader.service.UploadQueue;
+import com.rafali.flickruploader.tool.FileHasher;
 import com.rafali.flickruploader.tool.Utils;
 import com.rafali.flickruploader.ui.activity.FlickrUploaderActivity;
 
 import java.io.File;
 import java.util.Date;
-import java.util.Locale;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 
@@ -78,8 +79,40 @@ public class Media extends Model {
 	@Column("errorMessage")
 	private String errorMessage;
 
+	@Column("sha1Sig")
+	private String sha1Sig;
+
+	/**
+	 * Uploaded, but not added to its photo set yet
+	 */
+	@Column("setAssignmentPending")
+	private boolean setAssignmentPending;
+
+	/**
+	 * Most bytes of the upload body sent by a failed attempt, to tell an attempt that got further
+	 * than the previous ones from one that didn't
+	 */
+	@Column("uploadedBytes")
+	private long uploadedBytes;
+
+	/**
+	 * Ticket of an asynchronous upload Flickr is still processing
+	 */
+	@Column("uploadTicket")
+	private String uploadTicket;
+
 	private long timestampUploadStarted;
 
+	/**
+	 * Whether the pending retry is only waiting for the network to come back
+	 */
+	private volatile boolean waitingForNetwork;
+
+	/**
+	 * Bytes of the upload body sent by the current attempt
+	 */
+	private volatile long bytesSent;
+
 	public Media() {
 	}
 
@@ -147,7 +180,10 @@ public class Media extends Model {
 	}
 
 	public void setPath(String path) {
-		this.path = path;
+		if (this.path == null || !this.path.equals(path)) {
+			this.path = path;
+			this.sha1Sig = null;
+		}
 	}
 
 	public String getName() {
@@ -159,7 +195,11 @@ public class Media extends Model {
 	}
 
 	public void setSize(int size) {
-		this.size = size;
+		if (this.size != size) {
+			this.size = size;
+			this.sha1Sig = null;
+			UploadQueue.update(this);
+		}
 	}
 
 	public long getTimestampCreated() {
@@ -167,18 +207,25 @@ public class Media extends Model {
 	}
 
 	public void setTimestampCreated(long timestampCreated) {
-		this.timestampCreated = timestampCreated;
+		if (this.timestampCreated != timestampCreated) {
+			this.timestampCreated = timestampCreated;
+			UploadQueue.update(this);
+		}
 	}
 
 	public long getTimestampImported() {
 		return this.timestampImported;
 	}
 
-	public String getMd5Sum() {
+	public boolean hasMd5Sum() {
+		return this.md5Sum != null;
+	}
+
+	public synchronized String getMd5Sum() {
 		if (this.md5Sum == null) {
-			// this call is expensive, around 7 hash/sec on a Moto X
-			this.md5Sum = Utils.getMD5Checksum(path);
-			saveAsync();
+			// reads the whole file unless FileHasher has already seen it unchanged
+			this.md5Sum = FileHasher.getMd5Sum(path);
+			MediaWriter.save(this);
 		}
 		return this.md5Sum;
 	}
@@ -207,6 +254,7 @@ public class Media extends Model {
 			this.flickrId = null;
 			setStatus(STATUS.PAUSED);
 		}
+		UploadQueue.update(this);
 	}
 
 	public PRIVACY getPrivacy() {
@@ -254,8 +302,19 @@ public class Media extends Model {
 		}
 	}
 
+	public boolean hasSha1Sig() {
+		return this.sha1Sig != null;
+	}
+
+	/**
+	 * The signature only depends on the path and size, so it is computed once and then kept until
+	 * a MediaStore sync sees either of them change.
+	 */
 	public String getSha1Tag() {
-		return ("file:sha1sig=" + Utils.SHA1(this.path + "_" + new File(this.path).length())).toLowerCase(Locale.US);
+		if (this.sha1Sig == null) {
+			this.sha1Sig = Utils.SHA1(this.path + "_" + new File(this.path).length());
+		}
+		return "file:sha1sig=" + this.sha1Sig;
 	}
 
 	@Override
@@ -263,6 +322,13 @@ public class Media extends Model {
 		this.timestampImported = System.currentTimeMillis();
 	}
 
+	@Override
+	protected void afterDelete() {
+		UploadQueue.remove(this);
+		MediaWriter.cancel(this);
+		Utils.uncacheMedia(this);
+	}
+
 	public void save2(@Nullable Transaction t) {
 		FlickrUploaderActivity.updateStatic(this);
 		if (t == null) {
@@ -285,10 +351,12 @@ public class Media extends Model {
 			this.status = status;
 			if (status == STATUS.QUEUED) {
 				setRetries(0);
+				setUploadedBytes(0);
 				setTimestampQueued(System.currentTimeMillis());
 			} else if (status == STATUS.UPLOADED) {
 				setTimestampUploaded(System.currentTimeMillis());
 			}
+			UploadQueue.update(this);
 			if (t != null) {
 				save2(t);
 			}
@@ -305,6 +373,10 @@ public class Media extends Model {
 		return this.status == STATUS.FAILED;
 	}
 
+	public boolean isProcessing() {
+		return this.status == STATUS.PROCESSING;
+	}
+
 	public boolean isImported() {
 		return this.status == STATUS.IMPORTED;
 	}
@@ -324,8 +396,11 @@ public class Media extends Model {
 		}
 	}
 
+	/**
+	 * @return when the upload ended, or when the file was sent for a media Flickr is still processing
+	 */
 	public long getTimestampUploaded() {
-		if (isUploaded()) {
+		if (isUploaded() || uploadTicket != null) {
 			if (timestampUploaded > 0)
 				return timestampUploaded;
 			else
@@ -336,6 +411,7 @@ public class Media extends Model {
 
 	public void setTimestampUploaded(long timestampUploaded) {
 		this.timestampUploaded = timestampUploaded;
+		UploadQueue.update(this);
 	}
 
 	public void setTimestampUploaded(Date dateUploaded) {
@@ -354,6 +430,7 @@ public class Media extends Model {
 
 	public void setTimestampQueued(long timestampQueued) {
 		this.timestampQueued = timestampQueued;
+		UploadQueue.update(this);
 	}
 
 	public long getTimestampRetry() {
@@ -372,6 +449,14 @@ public class Media extends Model {
 		this.flickrSetId = flickrSetId;
 	}
 
+	public boolean isSetAssignmentPending() {
+		return setAssignmentPending;
+	}
+
+	public void setSetAssignmentPending(boolean setAssignmentPending) {
+		this.setAssignmentPending = setAssignmentPending;
+	}
+
 	public String getFlickrSetTitle() {
 		return flickrSetTitle;
 	}
@@ -404,6 +489,38 @@ public class Media extends Model {
 		this.timestampUploadStarted = timestampUploadStarted;
 	}
 
+	public boolean isWaitingForNetwork() {
+		return waitingForNetwork;
+	}
+
+	public void setWaitingForNetwork(boolean waitingForNetwork) {
+		this.waitingForNetwork = waitingForNetwork;
+	}
+
+	public long getUploadedBytes() {
+		return uploadedBytes;
+	}
+
+	public void setUploadedBytes(long uploadedBytes) {
+		this.uploadedBytes = uploadedBytes;
+	}
+
+	public String getUploadTicket() {
+		return uploadTicket;
+	}
+
+	public void setUploadTicket(String uploadTicket) {
+		this.uploadTicket = uploadTicket;
+	}
+
+	public long getBytesSent() {
+		return bytesSent;
+	}
+
+	public void setBytesSent(long bytesSent) {
+		this.bytesSent = bytesSent;
+	}
+
 	private int progress = 0;
 
 }
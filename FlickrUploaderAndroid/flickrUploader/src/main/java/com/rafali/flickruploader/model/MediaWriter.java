@@ -0,0 +1,175 @@
+package com.rafali.flickruploader.model;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import se.emilsjolander.sprinkles.Transaction;
+
+/**
+ * Writes media changes to the database behind the code making them.
+ * <p>
+ * An upload changes its media several times within a few seconds. Instead of a transaction for
+ * each change, the changed medias wait here, once each however many times they were saved, and are
+ * written together in a single transaction shortly after, or right away when an upload ends.
+ * <p>
+ * Pending changes are not in the database yet, so code querying medias must {@link #flush()} first
+ * for the query to see them. A media with changes not saved yet is marked as write pending, so that
+ * a query doesn't read it again from the database meanwhile and a save racing with it is not lost. The medias of a failed flush are
+ * queued again, behind any newer save.
+ */
+public class MediaWriter {
+
+	private static final Logger LOG = LoggerFactory.getLogger(MediaWriter.class);
+
+	/**
+	 * Long enough to gather the saves of an upload, short enough to lose little if the process is
+	 * killed
+	 */
+	private static final long FLUSH_DELAY_MS = 1_000;
+
+	private static final long RETRY_DELAY_MS = 60_000;
+
+	private static final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor();
+
+	private static final Map<Integer, Media> pending = new LinkedHashMap<>();
+
+	/**
+	 * The medias of the flush in progress, queued again if it fails, unless cancelled meanwhile
+	 */
+	private static final Map<Integer, Media> writing = new HashMap<>();
+
+	private static boolean scheduled = false;
+
+	private static int nbSaves = 0;
+
+	private static int nbTransactions = 0;
+
+	/**
+	 * Held while writing, so that a flush can't overtake another one and write older values last
+	 */
+	private static final Object flushLock = new Object();
+
+	private MediaWriter() {
+	}
+
+	/**
+	 * Write the media soon, along with the other changed medias.
+	 */
+	public static void save(Media media) {
+		synchronized (MediaWriter.class) {
+			media.setWritePending(true);
+			pending.put(media.getId(), media);
+			nbSaves++;
+		}
+		schedule(FLUSH_DELAY_MS);
+	}
+
+	private static void schedule(long delayMs) {
+		synchronized (MediaWriter.class) {
+			if (scheduled) {
+				return;
+			}
+			scheduled = true;
+		}
+		executor.schedule(new Runnable() {
+			@Override
+			public void run() {
+				synchronized (MediaWriter.class) {
+					scheduled = false;
+				}
+				try {
+					flush();
+				} catch (Exception e) {
+					LOG.error("Writing medias failed", e);
+				}
+			}
+		}, delayMs, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Write the media and all the other changed medias now.
+	 */
+	public static void saveNow(Media media) {
+		save(media);
+		flush();
+	}
+
+	/**
+	 * Forget the pending changes of a deleted media, which would otherwise insert it again.
+	 */
+	public static synchronized void cancel(Media media) {
+		pending.remove(media.getId());
+		writing.remove(media.getId());
+		media.setWritePending(false);
+	}
+
+	/**
+	 * Write all the pending changes now, in a single transaction.
+	 */
+	public static void flush() {
+		synchronized (flushLock) {
+			List<Media> medias;
+			synchronized (MediaWriter.class) {
+				if (pending.isEmpty()) {
+					return;
+				}
+				medias = new ArrayList<>(pending.values());
+				writing.putAll(pending);
+				pending.clear();
+				nbTransactions++;
+			}
+			boolean written = false;
+			try {
+				Transaction t = new Transaction();
+				try {
+					for (Media media : medias) {
+						// checked and saved at once, so that a media deleted meanwhile is not inserted again
+						synchronized (MediaWriter.class) {
+							if (!writing.containsKey(media.getId())) {
+								continue;
+							}
+							if (!media.save(t)) {
+								LOG.warn("{} could not be saved", media);
+							}
+						}
+					}
+					t.setSuccessful(true);
+				} finally {
+					t.finish();
+				}
+				written = true;
+			} finally {
+				synchronized (MediaWriter.class) {
+					for (Media media : writing.values()) {
+						if (pending.containsKey(media.getId())) {
+							// saved again meanwhile, so still pending
+							continue;
+						}
+						if (written) {
+							media.setWritePending(false);
+						} else {
+							pending.put(media.getId(), media);
+						}
+					}
+					writing.clear();
+				}
+				if (!written) {
+					schedule(RETRY_DELAY_MS);
+				}
+			}
+		}
+	}
+
+	public static synchronized String describe() {
+		return nbSaves + " media saves written in " + nbTransactions + " transactions";
+	}
+}
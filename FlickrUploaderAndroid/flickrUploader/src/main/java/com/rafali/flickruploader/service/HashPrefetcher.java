@@ -0,0 +1,93 @@
+package com.rafali.flickruploader.service;
+
+import android.os.Process;
+
+import com.rafali.flickruploader.model.Media;
+import com.rafali.flickruploader.tool.FileHasher;
+import com.rafali.flickruploader.tool.Utils;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Hashes the next queued medias in the background, so that the upload workers don't have to wait
+ * for the MD5 sum before they can start sending bytes.
+ */
+class HashPrefetcher {
+
+	private static final Logger LOG = LoggerFactory.getLogger(HashPrefetcher.class);
+
+	private static final ExecutorService executor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+		@Override
+		public Thread newThread(final Runnable runnable) {
+			return new Thread(new Runnable() {
+				@Override
+				public void run() {
+					Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+					runnable.run();
+				}
+			}, "Hash prefetcher");
+		}
+	});
+
+	/**
+	 * Medias submitted to the executor but not hashed yet
+	 */
+	private static final Set<Media> pending = new HashSet<>();
+
+	private HashPrefetcher() {
+	}
+
+	/**
+	 * Submit the next few queued medias to be uploaded that don't have an MD5 sum yet.
+	 */
+	static void prefetch() {
+		int lookahead = Utils.getHashLookahead();
+		if (lookahead <= 0) {
+			return;
+		}
+		for (final Media media : UploadService.getNextQueued(lookahead)) {
+			if (media.hasMd5Sum()) {
+				continue;
+			}
+			synchronized (pending) {
+				if (!pending.add(media)) {
+					continue;
+				}
+			}
+			executor.execute(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						if (media.isQueued()) {
+							media.getMd5Sum();
+						}
+					} catch (Exception e) {
+						LOG.warn("Hashing {} ahead of upload failed", media, e);
+					} finally {
+						synchronized (pending) {
+							pending.remove(media);
+						}
+					}
+					LOG.debug("{} files waiting to be hashed, {} bytes hashed at {} bytes/s", getQueueDepth(),
+							FileHasher.getNbBytesHashed(), FileHasher.getThroughput());
+				}
+			});
+		}
+	}
+
+	/**
+	 * @return how many medias are waiting to be hashed ahead of their upload
+	 */
+	static int getQueueDepth() {
+		synchronized (pending) {
+			return pending.size();
+		}
+	}
+}
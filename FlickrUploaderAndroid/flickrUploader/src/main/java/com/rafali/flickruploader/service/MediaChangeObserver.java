@@ -0,0 +1,110 @@
+package com.rafali.flickruploader.service;
+
+import android.content.ContentUris;
+import android.database.ContentObserver;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.SystemClock;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Collapses bursts of MediaStore change notifications into a single new files check.
+ * <p>
+ * A check runs once no notification has arrived for {@link #DEBOUNCE_MS}, or at the latest
+ * {@link #MAX_LATENCY_MS} after the first pending notification. When all notifications pointed to
+ * specific rows, only those medias are checked.
+ * <p>
+ * All callbacks run on the handler's thread, so no locking is needed.
+ */
+class MediaChangeObserver extends ContentObserver {
+
+	private static final Logger LOG = LoggerFactory.getLogger(MediaChangeObserver.class);
+
+	private static final long DEBOUNCE_MS = 2_000;
+	private static final long MAX_LATENCY_MS = 10_000;
+
+	private final Handler handler;
+
+	private final Set<Integer> pendingIds = new HashSet<>();
+	private boolean pendingFullCheck = false;
+	private long firstPendingAt = 0;
+
+	private int nbNotifications = 0;
+	private int nbChecks = 0;
+
+	private final Runnable checkRunnable = new Runnable() {
+		@Override
+		public void run() {
+			nbChecks++;
+			LOG.debug("checking new files after {} notifications, {} checks so far", nbNotifications, nbChecks);
+			if (pendingFullCheck) {
+				UploadService.checkNewFiles();
+			} else {
+				UploadService.checkNewFiles(new HashSet<>(pendingIds));
+			}
+			pendingIds.clear();
+			pendingFullCheck = false;
+			firstPendingAt = 0;
+		}
+	};
+
+	MediaChangeObserver(Handler handler) {
+		super(handler);
+		this.handler = handler;
+	}
+
+	@Override
+	public void onChange(boolean selfChange) {
+		onChange(selfChange, null);
+	}
+
+	@Override
+	public void onChange(boolean selfChange, Uri uri) {
+		nbNotifications++;
+
+		long id = -1;
+		if (uri != null) {
+			try {
+				id = ContentUris.parseId(uri);
+			} catch (NumberFormatException | UnsupportedOperationException e) {
+				// Not a single row, check everything
+			}
+		}
+		if (id < 0) {
+			pendingFullCheck = true;
+		} else {
+			pendingIds.add((int) id);
+		}
+
+		long now = SystemClock.elapsedRealtime();
+		if (firstPendingAt == 0) {
+			firstPendingAt = now;
+		}
+		handler.removeCallbacks(checkRunnable);
+		long delay = Math.min(DEBOUNCE_MS, firstPendingAt + MAX_LATENCY_MS - now);
+		handler.postDelayed(checkRunnable, Math.max(0, delay));
+	}
+
+	/**
+	 * Drop any pending check, for when the service goes away.
+	 */
+	void cancel() {
+		handler.removeCallbacks(checkRunnable);
+		pendingIds.clear();
+		pendingFullCheck = false;
+		firstPendingAt = 0;
+	}
+
+	int getNbNotifications() {
+		return nbNotifications;
+	}
+
+	int getNbChecks() {
+		return nbChecks;
+	}
+}
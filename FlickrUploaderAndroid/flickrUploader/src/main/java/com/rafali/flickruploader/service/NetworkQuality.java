@@ -0,0 +1,197 @@
+package com.rafali.flickruploader.service;
+
+import android.content.Context;
+import android.net.ConnectivityManager;
+import android.net.Network;
+import android.net.NetworkCapabilities;
+import android.net.NetworkRequest;
+
+import com.googlecode.flickrjandroid.HttpConnector;
+import com.googlecode.flickrjandroid.REST;
+import com.rafali.flickruploader.tool.Utils;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Estimates the state of the network from what the app already sees, without API calls of its
+ * own.
+ * <p>
+ * Connectivity comes from the platform network callbacks, bandwidth from the upload bodies being
+ * written, and round trip time from the API response times measured by {@link HttpConnector}.
+ * <p>
+ * Parallel uploads share the link, so the bandwidth is that of all of them together: the rate of an
+ * upload times the average number of uploads written along with it.
+ */
+public class NetworkQuality {
+
+	private static final Logger LOG = LoggerFactory.getLogger(NetworkQuality.class);
+
+	/**
+	 * Weight of a new bandwidth sample in the moving average
+	 */
+	private static final double SMOOTHING = 0.3;
+
+	/**
+	 * Shorter transfers say more about the socket buffers than about the link
+	 */
+	private static final long MIN_SAMPLE_MS = 1_000;
+
+	/**
+	 * Below this, a large video would hold up the rest of the queue for hours
+	 */
+	private static final long SLOW_LINK_BYTES_PER_SECOND = 256 * 1024;
+
+	private static final Set<Network> networks = Collections.newSetFromMap(new ConcurrentHashMap<Network, Boolean>());
+
+	private static boolean registered = false;
+
+	private static volatile long timestampConnected = 0;
+
+	private static double bandwidth = 0;
+
+	private static int activeTransfers = 0;
+
+	/**
+	 * Sum over time of the number of upload bodies being written, in milliseconds
+	 */
+	private static long transferMs = 0;
+
+	private static long lastTransferChange = 0;
+
+	private static final ConnectivityManager.NetworkCallback callback = new ConnectivityManager.NetworkCallback() {
+		@Override
+		public void onAvailable(Network network) {
+			boolean wasConnected = !networks.isEmpty();
+			networks.add(network);
+			if (!wasConnected) {
+				onConnected();
+			}
+		}
+
+		@Override
+		public void onLost(Network network) {
+			networks.remove(network);
+			if (networks.isEmpty()) {
+				LOG.info("network lost");
+			}
+		}
+	};
+
+	private NetworkQuality() {
+	}
+
+	/**
+	 * Start following connectivity changes. Until then, the network is assumed to be there.
+	 */
+	public static synchronized void register(Context context) {
+		if (registered) {
+			return;
+		}
+		ConnectivityManager cm = (ConnectivityManager) context.getSystemService(Context.CONNECTIVITY_SERVICE);
+		// the callback is told right away about the networks already available
+		cm.registerNetworkCallback(new NetworkRequest.Builder().addCapability(NetworkCapabilities.NET_CAPABILITY_INTERNET).build(), callback);
+		registered = true;
+	}
+
+	public static synchronized void unregister(Context context) {
+		if (!registered) {
+			return;
+		}
+		ConnectivityManager cm = (ConnectivityManager) context.getSystemService(Context.CONNECTIVITY_SERVICE);
+		try {
+			cm.unregisterNetworkCallback(callback);
+		} catch (IllegalArgumentException e) {
+			LOG.warn("network callback was not registered : {}", e.getMessage());
+		}
+		networks.clear();
+		registered = false;
+	}
+
+	private static void onConnected() {
+		synchronized (NetworkQuality.class) {
+			// a new connection may well be a different network
+			bandwidth = 0;
+		}
+		timestampConnected = System.currentTimeMillis();
+		LOG.info("network available");
+		UploadService.wake();
+	}
+
+	public static synchronized boolean isConnected() {
+		return !registered || !networks.isEmpty();
+	}
+
+	/**
+	 * @return when the device last went from no network to some network
+	 */
+	public static long getTimestampConnected() {
+		return timestampConnected;
+	}
+
+	/**
+	 * Record an upload body starting to be written.
+	 *
+	 * @return what to give to {@link #onTransfer(long, long, long)} once it is written
+	 */
+	public static synchronized long onTransferStart() {
+		accumulateTransfers();
+		activeTransfers++;
+		return transferMs;
+	}
+
+	/**
+	 * Record an upload body written, or given up.
+	 *
+	 * @param transfer what {@link #onTransferStart()} returned
+	 */
+	public static synchronized void onTransfer(long transfer, long bytes, long durationMs) {
+		accumulateTransfers();
+		activeTransfers--;
+		if (bytes <= 0 || durationMs < MIN_SAMPLE_MS) {
+			return;
+		}
+		double concurrency = Math.max(1, (transferMs - transfer) / (double) durationMs);
+		double sample = bytes * 1000.0 / durationMs * concurrency;
+		bandwidth = bandwidth == 0 ? sample : bandwidth + SMOOTHING * (sample - bandwidth);
+	}
+
+	private static void accumulateTransfers() {
+		long now = System.currentTimeMillis();
+		transferMs += activeTransfers * (now - lastTransferChange);
+		lastTransferChange = now;
+	}
+
+	/**
+	 * @return the recent upload bandwidth of all the uploads together in bytes per second, 0 if
+	 *         unknown
+	 */
+	public static synchronized long getBandwidth() {
+		return (long) bandwidth;
+	}
+
+	/**
+	 * @return true if uploads are capped or measured below what a large file needs to go through
+	 * in reasonable time
+	 */
+	public static boolean isSlow() {
+		long cap = Utils.getUploadBandwidthCap();
+		long bandwidth = getBandwidth();
+		return (cap > 0 && cap < SLOW_LINK_BYTES_PER_SECOND) || (bandwidth > 0 && bandwidth < SLOW_LINK_BYTES_PER_SECOND);
+	}
+
+	/**
+	 * @return the recent round trip time of API calls, 0 if unknown
+	 */
+	public static long getRoundTripMs() {
+		return REST.getConnector().getResponseMs();
+	}
+
+	public static String describe() {
+		return (isConnected() ? "connected" : "not connected") + ", " + getBandwidth() / 1024 + "KB/s, " + getRoundTripMs() + "ms round trip";
+	}
+}
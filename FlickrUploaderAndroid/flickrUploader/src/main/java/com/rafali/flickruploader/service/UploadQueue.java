@@ -0,0 +1,278 @@
+package com.rafali.flickruploader.service;
+
+import android.support.annotation.Nullable;
+
+import com.rafali.flickruploader.model.Media;
+import com.rafali.flickruploader.tool.Utils;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+/**
+ * In-memory index of the queued, recently uploaded and failed medias.
+ * <p>
+ * It is built from the database the first time it is needed, and then kept up to date by
+ * {@link Media} every time one of the indexed properties changes, so that picking the next media
+ * to upload doesn't require scanning all medias.
+ */
+public class UploadQueue {
+
+	private static final Logger LOG = LoggerFactory.getLogger(UploadQueue.class);
+
+	private static final long RECENT_MS = 24 * 3600 * 1000L;
+
+	/**
+	 * Snapshot of the sort key of a queued media, so that the media can be found in the tree even
+	 * after its timestamp changed.
+	 */
+	private static class QueuedEntry implements Comparable<QueuedEntry> {
+		final long timestampCreated;
+		final int id;
+		final int size;
+		final Media media;
+
+		QueuedEntry(Media media) {
+			this.timestampCreated = media.getTimestampCreated();
+			this.id = media.getId();
+			this.size = media.getSize();
+			this.media = media;
+		}
+
+		@Override
+		public int compareTo(QueuedEntry other) {
+			if (timestampCreated != other.timestampCreated) {
+				return timestampCreated < other.timestampCreated ? -1 : 1;
+			}
+			return id < other.id ? -1 : (id == other.id ? 0 : 1);
+		}
+	}
+
+	/**
+	 * Smallest first, then in creation order
+	 */
+	private static final Comparator<QueuedEntry> BY_SIZE = new Comparator<QueuedEntry>() {
+		@Override
+		public int compare(QueuedEntry e1, QueuedEntry e2) {
+			if (e1.size != e2.size) {
+				return e1.size < e2.size ? -1 : 1;
+			}
+			return e1.compareTo(e2);
+		}
+	};
+
+	private static final TreeSet<QueuedEntry> queued = new TreeSet<>();
+	private static final TreeSet<QueuedEntry> queuedBySize = new TreeSet<>(BY_SIZE);
+	private static final Map<Integer, QueuedEntry> queuedById = new HashMap<>();
+	private static final Map<Integer, Media> recentlyUploaded = new HashMap<>();
+	private static final Map<Integer, Media> failed = new HashMap<>();
+
+	private static volatile boolean loaded = false;
+
+	private UploadQueue() {
+	}
+
+	/**
+	 * Build the index from the database on first use.
+	 */
+	private static void ensureLoaded() {
+		if (loaded) {
+			return;
+		}
+
+		// Don't hold our lock while loading, Utils may be saving medias that call update()
+		List<Media> medias = Utils.loadMedia(false);
+		synchronized (UploadQueue.class) {
+			if (loaded) {
+				return;
+			}
+			long start = System.currentTimeMillis();
+			for (Media media : medias) {
+				index(media);
+			}
+			loaded = true;
+			LOG.info("{} queued, {} recently uploaded, {} failed indexed in {}ms", queued.size(),
+					recentlyUploaded.size(), failed.size(), System.currentTimeMillis() - start);
+		}
+	}
+
+	/**
+	 * Must be called whenever the status, the size or one of the timestamps of a media changes.
+	 */
+	public static synchronized void update(Media media) {
+		if (!loaded) {
+			// Will be picked up when the index is built
+			return;
+		}
+		unindex(media);
+		index(media);
+	}
+
+	public static synchronized void remove(Media media) {
+		if (!loaded) {
+			return;
+		}
+		unindex(media);
+	}
+
+	private static void index(Media media) {
+		if (media.isQueued()) {
+			QueuedEntry entry = new QueuedEntry(media);
+			queued.add(entry);
+			queuedBySize.add(entry);
+			queuedById.put(entry.id, entry);
+		}
+		if (isRecentlyUploaded(media, System.currentTimeMillis())) {
+			recentlyUploaded.put(media.getId(), media);
+		}
+		if (media.isFailed()) {
+			failed.put(media.getId(), media);
+		}
+	}
+
+	private static void unindex(Media media) {
+		QueuedEntry entry = queuedById.remove(media.getId());
+		if (entry != null) {
+			queued.remove(entry);
+			queuedBySize.remove(entry);
+		}
+		recentlyUploaded.remove(media.getId());
+		failed.remove(media.getId());
+	}
+
+	private static boolean isRecentlyUploaded(Media media, long now) {
+		return media.isUploaded() && media.getTimestampQueued() > now - RECENT_MS;
+	}
+
+	/**
+	 * @return the oldest created queued media, ignoring the medias of the excluded ids
+	 */
+	@Nullable
+	public static Media getOldestQueued(Collection<Integer> excludedIds) {
+		ensureLoaded();
+		synchronized (UploadQueue.class) {
+			for (QueuedEntry entry : queued) {
+				if (!excludedIds.contains(entry.media.getId())) {
+					return entry.media;
+				}
+			}
+			return null;
+		}
+	}
+
+	/**
+	 * @return the smallest queued media, ignoring the medias of the excluded ids
+	 */
+	@Nullable
+	public static Media getSmallestQueued(Collection<Integer> excludedIds) {
+		ensureLoaded();
+		synchronized (UploadQueue.class) {
+			for (QueuedEntry entry : queuedBySize) {
+				if (!excludedIds.contains(entry.media.getId())) {
+					return entry.media;
+				}
+			}
+			return null;
+		}
+	}
+
+	/**
+	 * @return up to count of the oldest created queued medias, oldest first
+	 */
+	public static List<Media> getOldestQueued(int count) {
+		ensureLoaded();
+		synchronized (UploadQueue.class) {
+			return first(queued, count);
+		}
+	}
+
+	/**
+	 * @return up to count of the smallest queued medias, smallest first
+	 */
+	public static List<Media> getSmallestQueued(int count) {
+		ensureLoaded();
+		synchronized (UploadQueue.class) {
+			return first(queuedBySize, count);
+		}
+	}
+
+	private static List<Media> first(Collection<QueuedEntry> entries, int count) {
+		List<Media> medias = new ArrayList<>(Math.min(count, entries.size()));
+		for (QueuedEntry entry : entries) {
+			if (medias.size() >= count) {
+				break;
+			}
+			medias.add(entry.media);
+		}
+		return medias;
+	}
+
+	public static int getQueuedSize() {
+		ensureLoaded();
+		synchronized (UploadQueue.class) {
+			return queued.size();
+		}
+	}
+
+	public static List<Media> getQueuedList() {
+		ensureLoaded();
+		synchronized (UploadQueue.class) {
+			List<Media> medias = new ArrayList<>(queued.size());
+			for (QueuedEntry entry : queued) {
+				medias.add(entry.media);
+			}
+			return medias;
+		}
+	}
+
+	public static int getRecentlyUploadedSize() {
+		ensureLoaded();
+		synchronized (UploadQueue.class) {
+			pruneRecentlyUploaded();
+			return recentlyUploaded.size();
+		}
+	}
+
+	public static List<Media> getRecentlyUploadedList() {
+		ensureLoaded();
+		synchronized (UploadQueue.class) {
+			pruneRecentlyUploaded();
+			return new ArrayList<>(recentlyUploaded.values());
+		}
+	}
+
+	/**
+	 * Uploads only ever get older, drop the ones that are no longer recent.
+	 */
+	private static void pruneRecentlyUploaded() {
+		long now = System.currentTimeMillis();
+		Iterator<Media> it = recentlyUploaded.values().iterator();
+		while (it.hasNext()) {
+			if (!isRecentlyUploaded(it.next(), now)) {
+				it.remove();
+			}
+		}
+	}
+
+	public static int getFailedSize() {
+		ensureLoaded();
+		synchronized (UploadQueue.class) {
+			return failed.size();
+		}
+	}
+
+	public static List<Media> getFailedList() {
+		ensureLoaded();
+		synchronized (UploadQueue.class) {
+			return new ArrayList<>(failed.values());
+		}
+	}
+}
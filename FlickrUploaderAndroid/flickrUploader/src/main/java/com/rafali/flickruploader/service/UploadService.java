@@ -5,7 +5,6 @@ import android.content.BroadcastReceiver;
 import android.content.Context;
 import android.content.Intent;
 import android.content.IntentFilter;
-import android.database.ContentObserver;
 import android.net.ConnectivityManager;
 import android.os.BatteryManager;
 import android.os.Handler;
@@ -22,6 +21,8 @@ import com.rafali.common.STR;
 import com.rafali.common.ToolString;
 import com.rafali.flickruploader.FlickrUploader;
 import com.rafali.flickruploader.api.FlickrApi;
+import com.rafali.flickruploader.api.PhotoSetAssigner;
+import com.rafali.flickruploader.api.TicketPoller;
 import com.rafali.flickruploader.broadcast.AlarmBroadcastReceiver;
 import com.rafali.flickruploader.enums.CAN_UPLOAD;
 import com.rafali.flickruploader.enums.MEDIA_TYPE;
@@ -29,6 +30,7 @@ import com.rafali.flickruploader.enums.STATUS;
 import com.rafali.flickruploader.logging.LoggingUtils;
 import com.rafali.flickruploader.model.Folder;
 import com.rafali.flickruploader.model.Media;
+import com.rafali.flickruploader.model.MediaWriter;
 import com.rafali.flickruploader.tool.Notifications;
 import com.rafali.flickruploader.tool.Utils;
 import com.rafali.flickruploader.tool.Utils.Callback;
@@ -47,9 +49,9 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Objects;
 import java.util.Set;
 
 import se.emilsjolander.sprinkles.Transaction;
@@ -124,25 +126,26 @@ public class UploadService extends Service {
 		synchronized (mPauseLock) {
             running = true;
         }
+		NetworkQuality.register(this);
 		getContentResolver().registerContentObserver(Images.Media.EXTERNAL_CONTENT_URI, true, imageTableObserver);
 		getContentResolver().registerContentObserver(Video.Media.EXTERNAL_CONTENT_URI, true, imageTableObserver);
 
-		if (thread == null || !thread.isAlive()) {
-			thread = new Thread(new UploadRunnable());
-			thread.start();
+		for (int i = 0; i < threads.length; i++) {
+			if (threads[i] == null || !threads[i].isAlive()) {
+				threads[i] = new Thread(new UploadRunnable(i), "Upload worker " + i);
+				threads[i].start();
+			}
 		}
 		IntentFilter filter = new IntentFilter(Intent.ACTION_BATTERY_CHANGED);
 		registerReceiver(batteryReceiver, filter);
 		checkNewFiles();
+		// photos uploaded before the app was last stopped may still be processed by Flickr or need their set
+		PhotoSetAssigner.schedule();
+		TicketPoller.schedule();
 		Notifications.init();
 	}
 
-	private ContentObserver imageTableObserver = new ContentObserver(new Handler()) {
-		@Override
-		public void onChange(boolean change) {
-			UploadService.checkNewFiles();
-		}
-	};
+	private MediaChangeObserver imageTableObserver = new MediaChangeObserver(new Handler());
 
 	private BroadcastReceiver batteryReceiver = new BroadcastReceiver() {
 		@Override
@@ -175,6 +178,14 @@ public class UploadService extends Service {
         }
 		unregisterReceiver(batteryReceiver);
 		getContentResolver().unregisterContentObserver(imageTableObserver);
+		imageTableObserver.cancel();
+		LOG.debug("{} media change notifications led to {} new files checks",
+				imageTableObserver.getNbNotifications(), imageTableObserver.getNbChecks());
+		LOG.debug("Flickr connections : {}", REST.getConnector());
+		LOG.debug("Network : {}", NetworkQuality.describe());
+		NetworkQuality.unregister(this);
+		MediaWriter.flush();
+		LOG.debug("Database : {}", MediaWriter.describe());
 	}
 
 	@Override
@@ -191,23 +202,35 @@ public class UploadService extends Service {
 	private boolean running = false;
 
 	public static int enqueue(boolean auto, Collection<Media> medias, String photoSetTitle) {
+		return enqueue(auto, Collections.singletonMap(photoSetTitle, medias));
+	}
+
+	/**
+	 * Enqueue medias for several photo sets at once, in a single transaction and with a single
+	 * listener notification.
+	 *
+	 * @param mediasBySetTitle medias to enqueue, by the title of the photo set to upload them to
+	 */
+	public static int enqueue(boolean auto, Map<String, ? extends Collection<Media>> mediasBySetTitle) {
 		int nbQueued = 0;
 		int nbAlreadyQueued = 0;
 		int nbAlreadyUploaded = 0;
 		Transaction t = new Transaction();
 		try {
-			for (Media media : medias) {
-				if (media.isQueued()) {
-					nbAlreadyQueued++;
-				} else if (media.isUploaded()) {
-					nbAlreadyUploaded++;
-				} else if (auto && media.getRetries() > 3) {
-					LOG.debug("not auto enqueueing file with too many retries : {}", media);
-				} else {
-					nbQueued++;
-					LOG.debug("enqueueing {}", media);
-					media.setFlickrSetTitle(photoSetTitle);
-					media.setStatus(STATUS.QUEUED, t);
+			for (Map.Entry<String, ? extends Collection<Media>> entry : mediasBySetTitle.entrySet()) {
+				for (Media media : entry.getValue()) {
+					if (media.isQueued() || media.isProcessing()) {
+						nbAlreadyQueued++;
+					} else if (media.isUploaded()) {
+						nbAlreadyUploaded++;
+					} else if (auto && media.getRetries() > 3) {
+						LOG.debug("not auto enqueueing file with too many retries : {}", media);
+					} else {
+						nbQueued++;
+						LOG.debug("enqueueing {}", media);
+						media.setFlickrSetTitle(entry.getKey());
+						media.setStatus(STATUS.QUEUED, t);
+					}
 				}
 			}
 			t.setSuccessful(true);
@@ -215,7 +238,7 @@ public class UploadService extends Service {
 			t.finish();
 		}
 		if (nbQueued > 0) {
-			checkQueue();
+			HashPrefetcher.prefetch();
 		}
 		for (UploadProgressListener uploadProgressListener : uploadProgressListeners) {
 			uploadProgressListener.onQueued(nbQueued, nbAlreadyUploaded, nbAlreadyQueued);
@@ -238,9 +261,6 @@ public class UploadService extends Service {
 		} finally {
 			t.finish();
 		}
-		if (nbQueued > 0) {
-			checkQueue();
-		}
 		wake(nbQueued > 0);
 	}
 
@@ -253,7 +273,7 @@ public class UploadService extends Service {
 					LOG.debug("dequeueing {}", media);
 					media.setStatus(STATUS.PAUSED, t);
 					nbDequeued++;
-					if (media.equals(mediaCurrentlyUploading)) {
+					if (isCurrentlyUploading(media)) {
 						REST.kill(media);
 					}
 				}
@@ -263,7 +283,6 @@ public class UploadService extends Service {
 			t.finish();
 		}
 		if (nbDequeued > 0) {
-			checkQueue();
 			for (UploadProgressListener uploadProgressListener : uploadProgressListeners) {
 				uploadProgressListener.onDequeued(nbDequeued);
 			}
@@ -271,23 +290,74 @@ public class UploadService extends Service {
 		wake();
 	}
 
-	private static boolean paused = true;
+	private static volatile boolean paused = true;
 
 	public static boolean isPaused() {
 		return paused;
 	}
 
-	private static Media mediaCurrentlyUploading;
-	private static Media mediaPreviouslyUploading;
+	/**
+	 * By id, as the path of a media may change during an upload
+	 */
+	private static final Map<Integer, Media> mediasCurrentlyUploading = new LinkedHashMap<>();
 	private static long lastUpload = 0;
 
-	public static Media getMediaCurrentlyUploading() {
-		return mediaCurrentlyUploading;
+	/**
+	 * @return one of the medias currently being uploaded, or null if no upload is in progress
+	 */
+	@Nullable
+	public static synchronized Media getMediaCurrentlyUploading() {
+		if (mediasCurrentlyUploading.isEmpty()) {
+			return null;
+		}
+		return mediasCurrentlyUploading.values().iterator().next();
+	}
+
+	public static synchronized List<Media> getMediasCurrentlyUploading() {
+		return new ArrayList<>(mediasCurrentlyUploading.values());
+	}
+
+	private static synchronized boolean isCurrentlyUploading(Media media) {
+		return mediasCurrentlyUploading.containsKey(media.getId());
+	}
+
+	/**
+	 * Pick the oldest queued media not already taken by another upload worker, and mark it as
+	 * being uploaded.
+	 */
+	@Nullable
+	private static synchronized Media claimNextMedia() {
+		Media media = checkQueue();
+		if (media != null) {
+			mediasCurrentlyUploading.put(media.getId(), media);
+		}
+		return media;
+	}
+
+	private static synchronized void releaseMedia(Media media) {
+		mediasCurrentlyUploading.remove(media.getId());
 	}
 
-	private static int nbNetworkRetries = 0;
+	/**
+	 * Longest wait for the network before retrying anyway, in case a connectivity change was missed
+	 */
+	private static final long NETWORK_RETRY_DELAY_MS = 3600 * 1000L;
+
+	/**
+	 * Delay before retrying an upload that failed after sending more than any previous attempt
+	 */
+	private static final long PARTIAL_UPLOAD_RETRY_DELAY_MS = 10_000;
 
 	private class UploadRunnable implements Runnable {
+		private final int workerIndex;
+
+		private Media mediaCurrentlyUploading;
+		private Media mediaPreviouslyUploading;
+
+		UploadRunnable(int workerIndex) {
+			this.workerIndex = workerIndex;
+		}
+
 		@Override
 		public void run() {
 			while (true) {
@@ -307,6 +377,7 @@ public class UploadService extends Service {
 					LOG.error("Upload error", e);
 				} finally {
 					if (mediaCurrentlyUploading != null) {
+						releaseMedia(mediaCurrentlyUploading);
 						mediaPreviouslyUploading = mediaCurrentlyUploading;
 						mediaCurrentlyUploading = null;
 					}
@@ -317,7 +388,16 @@ public class UploadService extends Service {
 
         @SuppressWarnings("deprecation")
         private void doOneIteration() throws InterruptedException {
-            mediaCurrentlyUploading = checkQueue();
+            if (workerIndex >= Utils.getUploadConcurrency()) {
+                // Not needed with the current settings / network, stay around in case that changes
+                waitForWork();
+                return;
+            }
+
+            mediaCurrentlyUploading = claimNextMedia();
+            if (mediaCurrentlyUploading != null) {
+                HashPrefetcher.prefetch();
+            }
 
             if (mediaPreviouslyUploading != null) {
                 for (UploadProgressListener uploadProgressListener : uploadProgressListeners) {
@@ -333,8 +413,13 @@ public class UploadService extends Service {
 
             CAN_UPLOAD canUploadNow = Utils.canUploadNow();
 
-            if (nothingCurrentlyUploading() || canUploadNow != CAN_UPLOAD.ok) {
-                paused = true;
+            if (mediaCurrentlyUploading == null || canUploadNow != CAN_UPLOAD.ok) {
+                paused = canUploadNow != CAN_UPLOAD.ok || nothingCurrentlyUploading();
+                if (mediaCurrentlyUploading != null) {
+                    // Let the other workers see it while we wait
+                    releaseMedia(mediaCurrentlyUploading);
+                    mediaCurrentlyUploading = null;
+                }
 
                 waitForWork();
                 return;
@@ -360,18 +445,29 @@ public class UploadService extends Service {
                 cm.setNetworkPreference(ConnectivityManager.DEFAULT_NETWORK_PREFERENCE);
             }
 
+            long waitStart = System.currentTimeMillis();
             while (mediaCurrentlyUploading.getTimestampRetry() < Long.MAX_VALUE && System.currentTimeMillis() < mediaCurrentlyUploading.getTimestampRetry()) {
+                // the network may also have come back before this wait, right after the upload found none
+                if (NetworkQuality.isConnected() && (mediaCurrentlyUploading.isWaitingForNetwork() || NetworkQuality.getTimestampConnected() > waitStart)) {
+                    LOG.info("network is back, retrying now : {}", mediaCurrentlyUploading);
+                    mediaCurrentlyUploading.setTimestampRetry(0);
+                    break;
+                }
                 synchronized (mPauseLock) {
                     long pausems = Math.max(1000, mediaCurrentlyUploading.getTimestampRetry() - System.currentTimeMillis());
                     LOG.debug("pausing for {}s before uploading", pausems / 1000);
                     mPauseLock.wait(pausems);
+                }
+                synchronized (UploadService.class) {
+                    releaseMedia(mediaCurrentlyUploading);
                     Media topQueued = checkQueue();
-                    if (!Objects.equals(topQueued, mediaCurrentlyUploading)) {
+                    if (topQueued == null || topQueued.getId() != mediaCurrentlyUploading.getId()) {
                         LOG.info("topQueued:{}, mediaCurrentlyUploading:{}",
                                 topQueued, mediaCurrentlyUploading);
                         mediaCurrentlyUploading = null;
                         break;
                     }
+                    mediasCurrentlyUploading.put(mediaCurrentlyUploading.getId(), mediaCurrentlyUploading);
                 }
             }
 
@@ -380,27 +476,25 @@ public class UploadService extends Service {
             }
 
             if (mediaCurrentlyUploading.getRetries() > 0) {
-                boolean networkOk = FlickrApi.isNetworkOk();
-                LOG.debug("retry={}, networkOk={}",
-                        mediaCurrentlyUploading.getRetries(), networkOk);
-                if (!networkOk) {
-                    nbNetworkRetries++;
-                    long waitingtime = (long) Math.min(3600 * 1000L, Math.max(10000L, Math.pow(2, nbNetworkRetries) * 1000L));
-                    LOG.warn(
-                            "network not ready yet, retrying in {}s, "
-                                    + "nbNetworkRetries={}",
-                            waitingtime / 1000, nbNetworkRetries);
+                LOG.debug("retry={}, network : {}",
+                        mediaCurrentlyUploading.getRetries(), NetworkQuality.describe());
+                if (!NetworkQuality.isConnected()) {
+                    // retried as soon as the network comes back
+                    LOG.warn("network not ready yet, waiting for it : {}", mediaCurrentlyUploading);
+                    mediaCurrentlyUploading.setWaitingForNetwork(true);
                     mediaCurrentlyUploading.setTimestampRetry(System.currentTimeMillis()
-                            + waitingtime);
-                    mediaCurrentlyUploading.save();
+                            + NETWORK_RETRY_DELAY_MS);
+                    MediaWriter.saveNow(mediaCurrentlyUploading);
                     return;
                 }
             }
 
+            mediaCurrentlyUploading.setWaitingForNetwork(false);
             UploadException exc = null;
             try {
                 LOG.debug("Starting upload : {}", mediaCurrentlyUploading);
                 mediaCurrentlyUploading.setTimestampUploadStarted(start);
+                REST.getUploadBandwidth().setRate(Utils.getUploadBandwidthCap());
                 FlickrApi.upload(mediaCurrentlyUploading);
             } catch (UploadException e) {
                 LOG.error("Upload failed", e);
@@ -409,19 +503,33 @@ public class UploadService extends Service {
             long time = System.currentTimeMillis() - start;
 
             if (exc == null) {
-                nbNetworkRetries = 0;
                 synchronized (mPauseLock) {
                     lastUpload = System.currentTimeMillis();
                 }
                 LOG.debug("Upload success : {}ms {}", time,
                         mediaCurrentlyUploading);
-                mediaCurrentlyUploading.setStatus(STATUS.UPLOADED);
+                // an asynchronous upload stays PROCESSING until TicketPoller resolves it, maybe already
+                if (mediaCurrentlyUploading.isUploaded()) {
+                    mediaCurrentlyUploading.setStatus(STATUS.UPLOADED);
+                }
 
                 LoggingUtils.logCustom(
                         new CustomEvent("Upload Finished").putCustomAttribute("Duration ms", time));
             } else {
                 mediaCurrentlyUploading.setTimestampUploadStarted(0);
                 mediaCurrentlyUploading.setErrorMessage(exc.getMessage());
+                long bytesSent = mediaCurrentlyUploading.getBytesSent();
+                if (exc.isRetryable() && bytesSent > mediaCurrentlyUploading.getUploadedBytes()) {
+                    // Flickr can't resume an upload, but an attempt that got further than the
+                    // previous ones is a flaky link rather than a failure: retry soon, without
+                    // counting it against the retry limit
+                    LOG.warn("Upload interrupted in {}ms after {} bytes, previous best {} : {}", time,
+                            bytesSent, mediaCurrentlyUploading.getUploadedBytes(), mediaCurrentlyUploading);
+                    mediaCurrentlyUploading.setUploadedBytes(bytesSent);
+                    mediaCurrentlyUploading.setTimestampRetry(System.currentTimeMillis() + PARTIAL_UPLOAD_RETRY_DELAY_MS);
+                    MediaWriter.saveNow(mediaCurrentlyUploading);
+                    return;
+                }
                 int newretries = mediaCurrentlyUploading.getRetries() + 1;
                 mediaCurrentlyUploading.setRetries(newretries);
                 if (exc.isRetryable()) {
@@ -434,11 +542,12 @@ public class UploadService extends Service {
                     mediaCurrentlyUploading.setStatus(STATUS.FAILED);
                 }
             }
-            mediaCurrentlyUploading.save();
+            // the end of the upload, written along with the changes made during it
+            MediaWriter.saveNow(mediaCurrentlyUploading);
         }
 
         private boolean nothingCurrentlyUploading() {
-            return mediaCurrentlyUploading == null;
+            return getMediaCurrentlyUploading() == null;
         }
 
         // This method should be called from a loop, in which case this warning isn't valid
@@ -449,7 +558,7 @@ public class UploadService extends Service {
                 FlickrUploaderActivity uploaderActivity =
                         FlickrUploaderActivity.getInstance();
 
-                if (nothingCurrentlyUploading()) {
+                if (nothingCurrentlyUploading() && checkQueue() == null) {
                     if ((uploaderActivity == null || uploaderActivity.isPaused()) && !Utils.canAutoUploadBool()
                             && System.currentTimeMillis() - lastUpload > 5 * 60_000) {
                         running = false;
@@ -578,37 +687,29 @@ public class UploadService extends Service {
 
 	private static final Object mPauseLock = new Object();
 
-	private Thread thread;
+	private final Thread[] threads = new Thread[Utils.MAX_UPLOAD_CONCURRENCY];
 
+	/**
+	 * @return the oldest queued media that no upload worker is working on yet, or the smallest one
+	 * on a slow link
+	 */
 	@Nullable
 	private static synchronized Media checkQueue() {
-		List<Media> medias = Utils.loadMedia(false);
-		recentlyUploaded.clear();
-		failed.clear();
-		currentlyQueued.clear();
-		Media oldestCreatedMedia = null;
-
-		long yesterday = System.currentTimeMillis() - 24 * 3600 * 1000L;
-		for (Media media : medias) {
-			if (media.isQueued()) {
-				currentlyQueued.add(media);
-				if (oldestCreatedMedia == null || oldestCreatedMedia.getTimestampCreated() > media.getTimestampCreated()) {
-					oldestCreatedMedia = media;
-				}
-			}
-			if (media.isUploaded() && media.getTimestampQueued() > yesterday) {
-				recentlyUploaded.add(media);
-			}
-			if (media.isFailed()) {
-				failed.add(media);
-			}
+		if (NetworkQuality.isSlow()) {
+			return UploadQueue.getSmallestQueued(mediasCurrentlyUploading.keySet());
 		}
-		return oldestCreatedMedia;
+		return UploadQueue.getOldestQueued(mediasCurrentlyUploading.keySet());
 	}
 
-	private static Set<Media> recentlyUploaded = new HashSet<>();
-	private static Set<Media> failed = new HashSet<>();
-	private static Set<Media> currentlyQueued = new HashSet<>();
+	/**
+	 * @return up to count of the queued medias, in the order {@link #checkQueue()} picks them
+	 */
+	static List<Media> getNextQueued(int count) {
+		if (NetworkQuality.isSlow()) {
+			return UploadQueue.getSmallestQueued(count);
+		}
+		return UploadQueue.getOldestQueued(count);
+	}
 
 	public static void onUploadProgress(Media media) {
 		for (UploadProgressListener uploadProgressListener : uploadProgressListeners) {
@@ -618,7 +719,7 @@ public class UploadService extends Service {
 
 	private static synchronized void onUploadFinished() {
 		for (UploadProgressListener uploadProgressListener : uploadProgressListeners) {
-			uploadProgressListener.onFinished(recentlyUploaded.size(), failed.size());
+			uploadProgressListener.onFinished(UploadQueue.getRecentlyUploadedSize(), UploadQueue.getFailedSize());
 		}
 	}
 
@@ -633,7 +734,7 @@ public class UploadService extends Service {
 					try {
 						for (final Media media : medias) {
 							if (media.getStatus() == status) {
-								if (media.isQueued() && media.equals(mediaCurrentlyUploading)) {
+								if (media.isQueued() && isCurrentlyUploading(media)) {
 									REST.kill(media);
 								}
 								media.setStatus(STATUS.PAUSED, t);
@@ -645,7 +746,8 @@ public class UploadService extends Service {
 						t.finish();
 					}
 					if (nbModified > 0) {
-						checkQueue();
+						// the workers waiting for these medias pick another one
+						wake();
 					}
 					if (callback != null)
 						callback.onResult(null);
@@ -659,13 +761,21 @@ public class UploadService extends Service {
 	private static long lastLoad = 0;
 
 	public static void checkNewFiles() {
+		checkNewFiles(null);
+	}
+
+	/**
+	 * @param mediaIds if not null, only check the medias with these ids
+	 */
+	static void checkNewFiles(@Nullable final Set<Integer> mediaIds) {
 		BackgroundExecutor.execute(new Runnable() {
 			@Override
 			public void run() {
 				try {
 
 					final List<Media> medias;
-					if (System.currentTimeMillis() - lastLoad > 5000) {
+					// Changed ids may be new files we don't know about yet
+					if (mediaIds != null || System.currentTimeMillis() - lastLoad > 5000) {
 						medias = Utils.loadMedia(true);
 						lastLoad = System.currentTimeMillis();
 					} else {
@@ -688,11 +798,16 @@ public class UploadService extends Service {
 
 					final long uploadDelayMs = Utils.getUploadDelayMs();
 					long newestFileAge = 0;
+					Map<String, List<Media>> mediasBySetTitle = new LinkedHashMap<>();
 					for (Media media : medias) {
                         if (!media.isImported()) {
                             continue;
                         }
 
+                        if (mediaIds != null && !mediaIds.contains(media.getId())) {
+                            continue;
+                        }
+
                         if (!autoUpload) {
                             LOG.debug("not uploading {} because {}", media, canAutoUpload);
                             media.setStatus(STATUS.PAUSED);
@@ -748,7 +863,16 @@ public class UploadService extends Service {
                         if (uploadDelayMs > 0) {
                             media.setTimestampRetry(System.currentTimeMillis() + uploadDelayMs);
                         }
-                        enqueue(true, Collections.singletonList(media), folder.getFlickrSetTitle());
+                        List<Media> setMedias = mediasBySetTitle.get(folder.getFlickrSetTitle());
+                        if (setMedias == null) {
+                            setMedias = new ArrayList<>();
+                            mediasBySetTitle.put(folder.getFlickrSetTitle(), setMedias);
+                        }
+                        setMedias.add(media);
+                    }
+
+                    if (!mediasBySetTitle.isEmpty()) {
+                        enqueue(true, mediasBySetTitle);
                     }
                 } catch (Exception e) {
 					LOG.error("Checking for new files failed", e);
@@ -758,32 +882,32 @@ public class UploadService extends Service {
 
 	}
 
-    public static synchronized int getCurrentlyQueuedSize() {
-        return currentlyQueued.size();
+    public static int getCurrentlyQueuedSize() {
+        return UploadQueue.getQueuedSize();
     }
 
-    public static synchronized List<Media> getCurrentlyQueuedList() {
-        return new ArrayList<>(currentlyQueued);
+    public static List<Media> getCurrentlyQueuedList() {
+        return UploadQueue.getQueuedList();
     }
 
-    public static synchronized List<Media> getRecentlyUploadedList() {
-        return new ArrayList<>(recentlyUploaded);
+    public static List<Media> getRecentlyUploadedList() {
+        return UploadQueue.getRecentlyUploadedList();
     }
 
-    public static synchronized int getRecentlyUploadedSize() {
-        return recentlyUploaded.size();
+    public static int getRecentlyUploadedSize() {
+        return UploadQueue.getRecentlyUploadedSize();
     }
 
-	public static synchronized int getNbTotal() {
-		return currentlyQueued.size() + recentlyUploaded.size() + failed.size();
+	public static int getNbTotal() {
+		return UploadQueue.getQueuedSize() + UploadQueue.getRecentlyUploadedSize() + UploadQueue.getFailedSize();
 	}
 
-    public static synchronized int getFailedSize() {
-        return failed.size();
+    public static int getFailedSize() {
+        return UploadQueue.getFailedSize();
     }
 
-    public static synchronized List<Media> getFailedList() {
-        return new ArrayList<>(failed);
+    public static List<Media> getFailedList() {
+        return UploadQueue.getFailedList();
     }
 
     private static long lastDeleteCheck = Utils.getLongProperty("lastDeleteCheck");
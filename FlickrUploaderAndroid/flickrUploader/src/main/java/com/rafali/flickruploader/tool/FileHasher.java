@@ -0,0 +1,129 @@
+package com.rafali.flickruploader.tool;
+
+import com.rafali.flickruploader.model.FileHash;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.concurrent.atomic.AtomicLong;
+
+import se.emilsjolander.sprinkles.Query;
+import se.emilsjolander.sprinkles.SqlStatement;
+
+/**
+ * Computes file MD5 sums, and remembers them in the database for as long as the file doesn't
+ * change.
+ */
+public class FileHasher {
+
+	private static final Logger LOG = LoggerFactory.getLogger(FileHasher.class);
+
+	/**
+	 * How much of the file to read at once
+	 */
+	private static final int BUFFER_SIZE = 256 * 1024;
+
+	/**
+	 * Each hashing thread reuses its buffer, direct so that the channel reads into it without an
+	 * intermediate copy
+	 */
+	private static final ThreadLocal<ByteBuffer> buffers = new ThreadLocal<ByteBuffer>() {
+		@Override
+		protected ByteBuffer initialValue() {
+			return ByteBuffer.allocateDirect(BUFFER_SIZE);
+		}
+	};
+
+	private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+	private static final AtomicLong nbBytesHashed = new AtomicLong();
+	private static final AtomicLong hashingMs = new AtomicLong();
+
+	private FileHasher() {
+	}
+
+	/**
+	 * @return the lowercase hex MD5 sum of the file, from the database if the file hasn't changed
+	 * since it was last hashed
+	 */
+	public static String getMd5Sum(String path) {
+		File file = new File(path);
+		long size = file.length();
+		long lastModified = file.lastModified();
+
+		FileHash fileHash = Query.one(FileHash.class, "select * from FileHash where path=?", path).get();
+		if (fileHash != null && fileHash.matches(size, lastModified)) {
+			return fileHash.getMd5Sum();
+		}
+
+		long start = System.currentTimeMillis();
+		String md5Sum = toHex(md5(file));
+		long time = System.currentTimeMillis() - start;
+		nbBytesHashed.addAndGet(size);
+		hashingMs.addAndGet(time);
+		LOG.debug("{} bytes hashed in {}ms : {}", size, time, path);
+
+		new FileHash(path, size, lastModified, md5Sum).save();
+		return md5Sum;
+	}
+
+	/**
+	 * Hash the file sequentially through a direct buffer. Unlike memory mappings, which are only
+	 * released when garbage collected, it holds no address space once done.
+	 */
+	static byte[] md5(File file) {
+		try (FileInputStream fis = new FileInputStream(file); FileChannel channel = fis.getChannel()) {
+			MessageDigest md = MessageDigest.getInstance("MD5");
+			ByteBuffer buffer = buffers.get();
+			buffer.clear();
+			while (channel.read(buffer) >= 0) {
+				buffer.flip();
+				md.update(buffer);
+				buffer.clear();
+			}
+			return md.digest();
+		} catch (IOException | NoSuchAlgorithmException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	/**
+	 * Forget the sums of the files no media refers to anymore, deleted or moved.
+	 */
+	public static void prune() {
+		try {
+			new SqlStatement("delete from FileHash where path not in (select path from Media where path is not null)").execute();
+		} catch (Exception e) {
+			LOG.warn("Pruning file hashes failed", e);
+		}
+	}
+
+	/**
+	 * @return the average hashing throughput since the app started, in bytes per second
+	 */
+	public static long getThroughput() {
+		long ms = hashingMs.get();
+		return ms == 0 ? 0 : nbBytesHashed.get() * 1000 / ms;
+	}
+
+	public static long getNbBytesHashed() {
+		return nbBytesHashed.get();
+	}
+
+	public static String toHex(byte[] bytes) {
+		char[] chars = new char[bytes.length * 2];
+		for (int i = 0; i < bytes.length; i++) {
+			int b = bytes[i] & 0xff;
+			chars[i * 2] = HEX_DIGITS[b >>> 4];
+			chars[i * 2 + 1] = HEX_DIGITS[b & 0x0f];
+		}
+		return new String(chars);
+	}
+}
@@ -49,6 +49,7 @@ import com.rafali.flickruploader.enums.VIEW_SIZE;
 import com.rafali.flickruploader.model.FlickrSet;
 import com.rafali.flickruploader.model.Folder;
 import com.rafali.flickruploader.model.Media;
+import com.rafali.flickruploader.model.MediaWriter;
 import com.rafali.flickruploader.ui.activity.FlickrUploaderActivity;
 import com.rafali.flickruploader.ui.activity.FlickrWebAuthActivity_;
 import com.rafali.flickruploader.ui.activity.PreferencesActivity;
@@ -69,6 +70,7 @@ import java.io.OutputStream;
 import java.io.PrintWriter;
 import java.io.StringWriter;
 import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.sql.Date;
 import java.util.ArrayList;
 import java.util.Collections;
@@ -328,72 +330,54 @@ public final class Utils {
 		return map;
 	}
 
+	private static final ThreadLocal<MessageDigest> sha1Digest = new ThreadLocal<MessageDigest>() {
+		@Override
+		protected MessageDigest initialValue() {
+			try {
+				return MessageDigest.getInstance("SHA-1");
+			} catch (NoSuchAlgorithmException e) {
+				throw new RuntimeException(e);
+			}
+		}
+	};
+
+	/**
+	 * @return the lowercase hex SHA-1 of the text
+	 */
 	public static String SHA1(String text) {
 		try {
-			MessageDigest md = MessageDigest.getInstance("SHA-1");
+			MessageDigest md = sha1Digest.get();
+			md.reset();
 			byte[] sha1hash;
+			// Only hashing text.length() bytes is wrong for non-ASCII paths, but the result must
+			// keep matching the tags of already uploaded photos
 			md.update(text.getBytes("utf-8"), 0, text.length());
 			sha1hash = md.digest();
-			return Utils.convertToHex(sha1hash);
+			return FileHasher.toHex(sha1hash);
 		} catch (Exception e) {
 			LOG.warn("Error while hashing", e);
 		}
 		return null;
 	}
 
-	static String convertToHex(byte[] data) {
-		StringBuilder buf = new StringBuilder();
-        for (byte aData : data) {
-            int halfbyte = (aData >>> 4) & 0x0F;
-            int two_halfs = 0;
-            do {
-                if ((0 <= halfbyte) && (halfbyte <= 9)) {
-                    buf.append((char) ('0' + halfbyte));
-                } else {
-                    buf.append((char) ('A' + (halfbyte - 10)));
-                }
-                halfbyte = aData & 0x0F;
-            } while (two_halfs++ < 1);
-        }
-		return buf.toString();
-	}
-
-	private static byte[] createChecksum(String filename) {
-		try {
-			InputStream fis = new FileInputStream(filename);
+	static final String[] proj = { FileColumns._ID, FileColumns.DATA, FileColumns.MEDIA_TYPE, FileColumns.DATE_ADDED, FileColumns.SIZE, Images.Media.DATE_TAKEN, FileColumns.DATE_MODIFIED };
 
-			byte[] buffer = new byte[1024];
-			MessageDigest complete;
-			complete = MessageDigest.getInstance("MD5");
-			int numRead;
+	private static final String MEDIA_SELECTION = FileColumns.MEDIA_TYPE + "=" + MEDIA_TYPE.PHOTO + " OR " + FileColumns.MEDIA_TYPE + "=" + MEDIA_TYPE.VIDEO;
 
-			do {
-				numRead = fis.read(buffer);
-				if (numRead > 0) {
-					complete.update(buffer, 0, numRead);
-				}
-			} while (numRead != -1);
-
-			fis.close();
-			return complete.digest();
-		} catch (Exception e) {
-			throw new RuntimeException(e);
-		}
-	}
+	/**
+	 * Incremental syncs can't see deleted files, so we still do a full sync this often
+	 */
+	private static final long FULL_SYNC_INTERVAL_MS = 3600 * 1000L;
 
-	// see this How-to for a faster way to convert
-	// a byte array to a HEX string
-	public static String getMD5Checksum(String filename) {
-		byte[] b = createChecksum(filename);
-		String result = "";
+	private static final String MEDIA_STORE_MAX_ID = "mediaStoreMaxId";
+	private static final String MEDIA_STORE_MAX_DATE_MODIFIED = "mediaStoreMaxDateModified";
 
-        for (byte aB : b) {
-            result += Integer.toString((aB & 0xff) + 0x100, 16).substring(1);
-        }
-		return result;
-	}
+	/**
+	 * Highest id among the rows modified at the max date, which the next sync doesn't need again
+	 */
+	private static final String MEDIA_STORE_MAX_DATE_MODIFIED_ID = "mediaStoreMaxDateModifiedId";
 
-	static final String[] proj = { FileColumns._ID, FileColumns.DATA, FileColumns.MEDIA_TYPE, FileColumns.DATE_ADDED, FileColumns.SIZE, Images.Media.DATE_TAKEN };
+	private static long lastFullSync = 0;
 
 	private static long lastCached = 0;
 	private final static List<Media> cachedMedias = new ArrayList<>();
@@ -406,6 +390,8 @@ public final class Utils {
                 synchronized (cachedMedias) {
                     if (cachedMedias.isEmpty()) {
                         long start = System.currentTimeMillis();
+                        // for the query to see the pending changes
+                        MediaWriter.flush();
                         cachedMedias.addAll(Query.all(Media.class).get().asList());
                         lastCached = System.currentTimeMillis();
                         LOG.info("{} load from local database done in {} ms", cachedMedias.size(),
@@ -417,6 +403,7 @@ public final class Utils {
                 }
             }
 			if (sync || empty) {
+                MediaWriter.flush();
                 List<Media> syncMedia = syncMediaDatabase();
                 synchronized (cachedMedias) {
                     cachedMedias.clear();
@@ -440,30 +427,162 @@ public final class Utils {
 		}
 	}
 
+	/**
+	 * Make the next {@link #loadMedia(boolean)} sync compare the whole MediaStore with our database,
+	 * for when files may have been deleted.
+	 */
+	public static synchronized void requestFullMediaSync() {
+		lastFullSync = 0;
+	}
+
+	/**
+	 * Forget about a deleted media until the next sync.
+	 */
+	public static void uncacheMedia(Media media) {
+		synchronized (cachedMedias) {
+			Iterator<Media> it = cachedMedias.iterator();
+			while (it.hasNext()) {
+				if (it.next() == media) {
+					it.remove();
+					break;
+				}
+			}
+		}
+	}
+
 	private static synchronized List<Media> syncMediaDatabase() {
+		boolean incremental;
+		List<Media> knownMedias;
+		synchronized (cachedMedias) {
+			incremental = !cachedMedias.isEmpty()
+					&& System.currentTimeMillis() - lastFullSync < FULL_SYNC_INTERVAL_MS
+					&& getLongProperty(MEDIA_STORE_MAX_ID) > 0;
+			knownMedias = incremental ? new ArrayList<>(cachedMedias) : null;
+		}
+		if (incremental) {
+			return syncMediaDatabaseIncremental(knownMedias);
+		}
+		return syncMediaDatabaseFull();
+	}
+
+	/**
+	 * Only look at MediaStore rows added or modified since the last sync. Deleted rows are left to
+	 * the next full sync.
+	 *
+	 * @param knownMedias all medias as of the last sync, new medias are appended to it
+	 */
+	private static List<Media> syncMediaDatabaseIncremental(List<Media> knownMedias) {
+		long start = System.currentTimeMillis();
+		long maxId = getLongProperty(MEDIA_STORE_MAX_ID);
+		long maxDateModified = getLongProperty(MEDIA_STORE_MAX_DATE_MODIFIED);
+		long maxDateModifiedId = getLongProperty(MEDIA_STORE_MAX_DATE_MODIFIED_ID);
+		Map<Integer, Media> knownById = new HashMap<>(knownMedias.size() * 2);
+		for (Media media : knownMedias) {
+			knownById.put(media.getId(), media);
+		}
+		Cursor cursor = null;
+		Transaction t = new Transaction();
+		int nbChanged = 0;
+		int nbNewFiles = 0;
+		try {
+			String selection = "(" + MEDIA_SELECTION + ") AND (" + FileColumns._ID + ">? OR " + FileColumns.DATE_MODIFIED + ">? OR (" + FileColumns.DATE_MODIFIED + "=? AND " + FileColumns._ID + ">?))";
+			String[] selectionArgs = { String.valueOf(maxId), String.valueOf(maxDateModified), String.valueOf(maxDateModified), String.valueOf(maxDateModifiedId) };
+			String orderBy = FileColumns._ID + " ASC";
+			cursor = FlickrUploader.getAppContext().getContentResolver().query(MediaStore.Files.getContentUri("external"), proj, selection, selectionArgs, orderBy);
+
+			int idColumn = cursor.getColumnIndex(FileColumns._ID);
+			int dataColumn = cursor.getColumnIndex(FileColumns.DATA);
+			int sizeColumn = cursor.getColumnIndex(FileColumns.SIZE);
+			int dateModifiedColumn = cursor.getColumnIndex(FileColumns.DATE_MODIFIED);
+
+			final boolean shouldAutoUpload = isAutoUpload() && FlickrApi.isAuthentified();
+
+			while (cursor.moveToNext()) {
+				try {
+					int mediaStoreId = cursor.getInt(idColumn);
+					String data = cursor.getString(dataColumn);
+					maxId = Math.max(maxId, mediaStoreId);
+					long dateModified = cursor.getLong(dateModifiedColumn);
+					if (dateModified > maxDateModified) {
+						maxDateModified = dateModified;
+						maxDateModifiedId = mediaStoreId;
+					} else if (dateModified == maxDateModified) {
+						maxDateModifiedId = Math.max(maxDateModifiedId, mediaStoreId);
+					}
+
+					Media media = knownById.get(mediaStoreId);
+					if (media == null) {
+						// not known as of the last sync, but it may have been saved since
+						media = Query.one(Media.class, "select * from Media where id=?", mediaStoreId).get();
+						if (media != null) {
+							knownMedias.add(media);
+						}
+					}
+					if (media == null) {
+						media = new Media(shouldAutoUpload ? STATUS.IMPORTED : STATUS.PAUSED);
+						media.setExist(false);
+						knownMedias.add(media);
+						nbNewFiles++;
+					} else if (media.getPath().equals(data) && media.getSize() == cursor.getInt(sizeColumn)) {
+						// nothing to do, already in sync
+						continue;
+					} else {
+						media.setExist(true);
+					}
+					persistMedia(media, cursor, t);
+					nbChanged++;
+				} catch (Exception e) {
+					LOG.error("FIXME: Log message missing", e);
+				}
+			}
+			t.setSuccessful(true);
+		} catch (Exception e) {
+			LOG.error("FIXME: Log message missing", e);
+		} finally {
+			t.finish();
+			if (cursor != null)
+				cursor.close();
+		}
+		if (t.isSuccessful()) {
+			setLongProperty(MEDIA_STORE_MAX_ID, maxId);
+			setLongProperty(MEDIA_STORE_MAX_DATE_MODIFIED, maxDateModified);
+			setLongProperty(MEDIA_STORE_MAX_DATE_MODIFIED_ID, maxDateModifiedId);
+		}
+		if (nbNewFiles > 0) {
+			FlickrUploaderActivity.onNewFiles();
+		}
+		LOG.info("{} changed, {} new, incremental sync done in {} ms", nbChanged, nbNewFiles, System.currentTimeMillis() - start);
+		return knownMedias;
+	}
+
+	/**
+	 * Merge the whole MediaStore with our whole database, both ordered by id.
+	 */
+	private static List<Media> syncMediaDatabaseFull() {
 		// Log.i("STACK", ToolString.stack2string(new Exception()));
 		List<Media> syncedMedias = new ArrayList<>();
 		long start = System.currentTimeMillis();
 		Cursor cursor = null;
 		Transaction t = new Transaction();
 		int nbNewFiles = 0;
+		int nbChanged = 0;
+		long maxId = 0;
+		long maxDateModified = 0;
+		long maxDateModifiedId = 0;
 		try {
 			ManyQuery<Media> query = Query.many(Media.class, "select * from Media order by id asc");
 			CursorList<Media> cursorList = query.get();
 			final int totalDatabase = cursorList.size();
 
 			Iterator<Media> it = cursorList.iterator();
-			String selection = FileColumns.MEDIA_TYPE + "=" + MEDIA_TYPE.PHOTO + " OR " + FileColumns.MEDIA_TYPE + "=" + MEDIA_TYPE.VIDEO;
 
 			String orderBy = FileColumns._ID + " ASC";
-			cursor = FlickrUploader.getAppContext().getContentResolver().query(MediaStore.Files.getContentUri("external"), proj, selection, null, orderBy);
+			cursor = FlickrUploader.getAppContext().getContentResolver().query(MediaStore.Files.getContentUri("external"), proj, MEDIA_SELECTION, null, orderBy);
 
 			int idColumn = cursor.getColumnIndex(FileColumns._ID);
 			int dataColumn = cursor.getColumnIndex(FileColumns.DATA);
-			int mediaTypeColumn = cursor.getColumnIndex(FileColumns.MEDIA_TYPE);
-			int dateAddedColumn = cursor.getColumnIndexOrThrow(FileColumns.DATE_ADDED);
 			int sizeColumn = cursor.getColumnIndex(FileColumns.SIZE);
-			int dateTakenColumn = cursor.getColumnIndexOrThrow(Images.Media.DATE_TAKEN);
+			int dateModifiedColumn = cursor.getColumnIndex(FileColumns.DATE_MODIFIED);
 			cursor.moveToFirst();
 			final int totalMediaStore = cursor.getCount();
 
@@ -496,6 +615,14 @@ public final class Utils {
 					try {
 						int mediaStoreId = cursor.getInt(idColumn);
 						String data = cursor.getString(dataColumn);
+						maxId = Math.max(maxId, mediaStoreId);
+						long dateModified = cursor.getLong(dateModifiedColumn);
+						if (dateModified > maxDateModified) {
+							maxDateModified = dateModified;
+							maxDateModifiedId = mediaStoreId;
+						} else if (dateModified == maxDateModified) {
+							maxDateModifiedId = Math.max(maxDateModifiedId, mediaStoreId);
+						}
 
 						// LOG.info("i=" + i + ", mediaStoreId=" + mediaStoreId
 						// + ", currentMedia=" + currentMedia);
@@ -504,7 +631,8 @@ public final class Utils {
                             LOG.info("{} no longer exist, we should delete it", currentMedia);
 							currentMedia.deleteAsync();
 							currentMedia = null;
-						} else if (currentMedia != null && currentMedia.getId() == mediaStoreId && currentMedia.getPath().equals(data)) {
+						} else if (currentMedia != null && currentMedia.getId() == mediaStoreId && currentMedia.getPath().equals(data)
+								&& currentMedia.getSize() == cursor.getInt(sizeColumn)) {
 							// LOG.info("nothing to do, already in sync");
 							syncedMedias.add(currentMedia);
 							currentMedia = null;
@@ -512,50 +640,20 @@ public final class Utils {
 						} else {
 							Media mediaToPersist;
 							if (currentMedia != null && currentMedia.getId() == mediaStoreId) {
+								// moved or modified, but not new
 								mediaToPersist = currentMedia;
 								currentMedia = null;
 								mediaToPersist.setExist(true);
+								nbChanged++;
 							} else {
 								mediaToPersist = new Media(shouldAutoUpload ? STATUS.IMPORTED : STATUS.PAUSED);
 								mediaToPersist.setExist(false);
-							}
-							syncedMedias.add(mediaToPersist);
-
-							// LOG.info("creating new Media");
-							Long date = null;
-							String dateStr = null;
-							try {
-								dateStr = cursor.getString(dateTakenColumn);
-								if (ToolString.isBlank(dateStr)) {
-									dateStr = cursor.getString(dateAddedColumn);
-									if (ToolString.isNotBlank(dateStr)) {
-										if (dateStr.trim().length() <= 10) {
-											date = Long.valueOf(dateStr) * 1000L;
-										} else {
-											date = Long.valueOf(dateStr);
-										}
-									}
-								} else {
-									date = Long.valueOf(dateStr);
+								if (totalDatabase > 0) {
+									nbNewFiles++;
 								}
-							} catch (Exception e) {
-                                LOG.warn("{} : {}", e.getClass().getSimpleName(), dateStr);
-							}
-							if (date == null) {
-								File file = new File(data);
-								date = file.lastModified();
-							}
-
-							mediaToPersist.setId(mediaStoreId);
-							mediaToPersist.setMediaType(cursor.getInt(mediaTypeColumn));
-							mediaToPersist.setPath(data);
-							mediaToPersist.setSize(cursor.getInt(sizeColumn));
-							mediaToPersist.setTimestampCreated(date);
-							mediaToPersist.save(t);
-
-							if (totalDatabase > 0) {
-								nbNewFiles++;
 							}
+							syncedMedias.add(mediaToPersist);
+							persistMedia(mediaToPersist, cursor, t);
 
 							cursor.moveToNext();
 						}
@@ -572,13 +670,60 @@ public final class Utils {
 			if (cursor != null)
 				cursor.close();
 		}
+		if (t.isSuccessful()) {
+			lastFullSync = System.currentTimeMillis();
+			setLongProperty(MEDIA_STORE_MAX_ID, maxId);
+			setLongProperty(MEDIA_STORE_MAX_DATE_MODIFIED, maxDateModified);
+			setLongProperty(MEDIA_STORE_MAX_DATE_MODIFIED_ID, maxDateModifiedId);
+			FileHasher.prune();
+		}
 		if (nbNewFiles > 0) {
 			FlickrUploaderActivity.onNewFiles();
 		}
-        LOG.info("{} sync done in {} ms", syncedMedias.size(), System.currentTimeMillis() - start);
+        LOG.info("{} synced, {} changed, {} new, sync done in {} ms", syncedMedias.size(), nbChanged, nbNewFiles,
+				System.currentTimeMillis() - start);
 		return syncedMedias;
 	}
 
+	/**
+	 * Copy the MediaStore row the cursor is on into the media and save it.
+	 */
+	private static void persistMedia(Media mediaToPersist, Cursor cursor, Transaction t) {
+		String data = cursor.getString(cursor.getColumnIndex(FileColumns.DATA));
+
+		// LOG.info("creating new Media");
+		Long date = null;
+		String dateStr = null;
+		try {
+			dateStr = cursor.getString(cursor.getColumnIndexOrThrow(Images.Media.DATE_TAKEN));
+			if (ToolString.isBlank(dateStr)) {
+				dateStr = cursor.getString(cursor.getColumnIndexOrThrow(FileColumns.DATE_ADDED));
+				if (ToolString.isNotBlank(dateStr)) {
+					if (dateStr.trim().length() <= 10) {
+						date = Long.valueOf(dateStr) * 1000L;
+					} else {
+						date = Long.valueOf(dateStr);
+					}
+				}
+			} else {
+				date = Long.valueOf(dateStr);
+			}
+		} catch (Exception e) {
+            LOG.warn("{} : {}", e.getClass().getSimpleName(), dateStr);
+		}
+		if (date == null) {
+			File file = new File(data);
+			date = file.lastModified();
+		}
+
+		mediaToPersist.setId(cursor.getInt(cursor.getColumnIndex(FileColumns._ID)));
+		mediaToPersist.setMediaType(cursor.getInt(cursor.getColumnIndex(FileColumns.MEDIA_TYPE)));
+		mediaToPersist.setPath(data);
+		mediaToPersist.setSize(cursor.getInt(cursor.getColumnIndex(FileColumns.SIZE)));
+		mediaToPersist.setTimestampCreated(date);
+		mediaToPersist.save(t);
+	}
+
 	public static String canAutoUpload() {
 		if (!Utils.isAutoUpload()) {
 			return "Autoupload disabled";
@@ -694,6 +839,10 @@ public final class Utils {
 		return Utils.getBooleanProperty("autodeletemedia", false);
 	}
 
+	public static boolean isAsyncUpload() {
+		return Utils.getBooleanProperty("upload_async", false);
+	}
+
 	public static boolean isAutoUpload(int mediaType) {
 		if (mediaType == MEDIA_TYPE.PHOTO) {
 			return Utils.getBooleanProperty(PreferencesActivity.AUTOUPLOAD, false);
@@ -1109,6 +1258,66 @@ public final class Utils {
 		return 0;
 	}
 
+	public static final int MAX_UPLOAD_CONCURRENCY = 4;
+
+	/**
+	 * @return how many uploads may run in parallel, either as set by the user or picked from the
+	 * active network type when set to "auto"
+	 */
+	public static int getUploadConcurrency() {
+		String upload_concurrency = sp.getString("upload_concurrency", "auto");
+		if (!"auto".equals(upload_concurrency)) {
+			try {
+				return Math.max(1, Math.min(MAX_UPLOAD_CONCURRENCY, Integer.parseInt(upload_concurrency)));
+			} catch (NumberFormatException e) {
+				LOG.warn("invalid upload_concurrency : {}", upload_concurrency);
+			}
+		}
+		ConnectivityManager manager = (ConnectivityManager) FlickrUploader.getAppContext().getSystemService(Context.CONNECTIVITY_SERVICE);
+		NetworkInfo activeNetwork = manager.getActiveNetworkInfo();
+		if (activeNetwork != null) {
+			switch (activeNetwork.getType()) {
+			case ConnectivityManager.TYPE_WIFI:
+			case ConnectivityManager.TYPE_ETHERNET:
+				return 3;
+			default:
+				break;
+			}
+		}
+		return 1;
+	}
+
+	/**
+	 * @return the upload speed limit set by the user for the active network, metered or not, in
+	 * bytes per second, 0 for no limit
+	 */
+	public static long getUploadBandwidthCap() {
+		ConnectivityManager manager = (ConnectivityManager) FlickrUploader.getAppContext().getSystemService(Context.CONNECTIVITY_SERVICE);
+		String key = manager.isActiveNetworkMetered() ? "upload_cap_metered" : "upload_cap_unmetered";
+		String cap = sp.getString(key, "0");
+		try {
+			return Math.max(0, Long.parseLong(cap)) * 1024;
+		} catch (NumberFormatException e) {
+			LOG.warn("invalid {} : {}", key, cap);
+		}
+		return 0;
+	}
+
+	public static final int DEFAULT_HASH_LOOKAHEAD = 5;
+
+	/**
+	 * @return how many of the next queued files should be hashed before their upload starts
+	 */
+	public static int getHashLookahead() {
+		String hash_lookahead = sp.getString("hash_lookahead", String.valueOf(DEFAULT_HASH_LOOKAHEAD));
+		try {
+			return Math.max(0, Integer.parseInt(hash_lookahead));
+		} catch (NumberFormatException e) {
+			LOG.warn("invalid hash_lookahead : {}", hash_lookahead);
+			return DEFAULT_HASH_LOOKAHEAD;
+		}
+	}
+
 	public static long getFileSize(File file) {
 		long count = 0;
 		if (file.exists()) {
@@ -1247,6 +1247,8 @@ public class FlickrUploaderActivity extends AppCompatActivity implements SwipeRe
 
     @Override
     public void onRefresh() {
+        // The user asked for it, also catch files deleted since the last full sync
+        Utils.requestFullMediaSync();
         synchronized (mediasLock) {
             if (medias == null) {
                 return;
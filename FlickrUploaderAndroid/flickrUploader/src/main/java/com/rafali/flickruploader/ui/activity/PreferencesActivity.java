@@ -24,6 +24,7 @@ import com.rafali.flickruploader.api.FlickrApi;
 import com.rafali.flickruploader.enums.PRIVACY;
 import com.rafali.flickruploader.enums.STATUS;
 import com.rafali.flickruploader.model.Media;
+import com.rafali.flickruploader.model.MediaWriter;
 import com.rafali.flickruploader.service.UploadService;
 import com.rafali.flickruploader.tool.Utils;
 import com.rafali.flickruploader2.BuildConfig;
@@ -79,6 +80,8 @@ public class PreferencesActivity extends AbstractPreferenceActivity implements O
 									editor.remove(STR.userName);
 									editor.apply();
 									editor.commit();
+									// the medias not written yet are deleted too
+									MediaWriter.flush();
 									ManyQuery<Media> query = Query.all(Media.class);
 									ModelList.from(query.get()).deleteAllAsync();
 									render();
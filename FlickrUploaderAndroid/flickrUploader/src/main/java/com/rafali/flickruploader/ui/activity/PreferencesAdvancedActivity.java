@@ -88,6 +88,12 @@ public class PreferencesAdvancedActivity extends AbstractPreferenceActivity impl
                 final List<String> autoupload_delay_values = Arrays.asList(getResources().getStringArray(R.array.autoupload_delay_values));
                 final String[] autoupload_delay_entries = getResources().getStringArray(R.array.autoupload_delay_entries);
                 final String autoupload_delay_value = Utils.getStringProperty("autoupload_delay", autoupload_delay_values.get(0));
+                final List<String> upload_concurrency_values = Arrays.asList(getResources().getStringArray(R.array.upload_concurrency_values));
+                final String[] upload_concurrency_entries = getResources().getStringArray(R.array.upload_concurrency_entries);
+                final String upload_concurrency_value = Utils.getStringProperty("upload_concurrency", upload_concurrency_values.get(0));
+                final List<String> hash_lookahead_values = Arrays.asList(getResources().getStringArray(R.array.hash_lookahead_values));
+                final String[] hash_lookahead_entries = getResources().getStringArray(R.array.hash_lookahead_entries);
+                final String hash_lookahead_value = Utils.getStringProperty("hash_lookahead", String.valueOf(Utils.DEFAULT_HASH_LOOKAHEAD));
                 runOnUiThread(new Runnable() {
                     @Override
                     public void run() {
@@ -97,6 +103,10 @@ public class PreferencesAdvancedActivity extends AbstractPreferenceActivity impl
                         } else {
                             findPreference("autoupload_delay").setSummary(autoupload_delay);
                         }
+                        int upload_concurrency_index = Math.max(0, upload_concurrency_values.indexOf(upload_concurrency_value));
+                        findPreference("upload_concurrency").setSummary(upload_concurrency_entries[upload_concurrency_index]);
+                        int hash_lookahead_index = Math.max(0, hash_lookahead_values.indexOf(hash_lookahead_value));
+                        findPreference("hash_lookahead").setSummary(hash_lookahead_entries[hash_lookahead_index]);
                         findPreference("upload_description").setSummary(Html.fromHtml(Utils.getUploadDescription()));
                         findPreference("custom_tags").setSummary(Utils.getStringProperty("custom_tags"));
                     }
@@ -2,9 +2,7 @@ package se.emilsjolander.sprinkles;
 
 import android.database.Cursor;
 
-import java.util.Arrays;
 import java.util.Iterator;
-import java.util.List;
 
 class CursorIterator<T extends Model> implements Iterator<T> {
 
@@ -24,15 +22,15 @@ class CursorIterator<T extends Model> implements Iterator<T> {
 		return (pos + 1) < count;
 	}
 
-	List<String> colNames;
+	private CursorReader<T> reader;
 
 	@Override
 	public T next() {
 		pos++;
 		cursor.moveToPosition(pos);
-		if (colNames == null)
-			colNames = Arrays.asList(cursor.getColumnNames());
-		return Utils.getResultFromCursor(type, cursor, colNames);
+		if (reader == null)
+			reader = new CursorReader<T>(type, cursor);
+		return reader.read(cursor);
 	}
 
 	@Override
@@ -4,7 +4,6 @@ import android.database.Cursor;
 
 import java.io.Closeable;
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.Iterator;
 import java.util.List;
 
@@ -36,7 +35,7 @@ public class CursorList<T extends Model> implements Iterable<T>, Closeable {
         return cursor == null ? 0 : cursor.getCount();
     }
 
-	List<String> colNames;
+	private CursorReader<T> reader;
 
     /**
      *
@@ -48,9 +47,9 @@ public class CursorList<T extends Model> implements Iterable<T>, Closeable {
     public T get(int pos) {
         requireOpen();
         cursor.moveToPosition(pos);
-		if (colNames == null)
-			colNames = Arrays.asList(cursor.getColumnNames());
-       return Utils.getResultFromCursor(type, cursor, colNames);
+		if (reader == null)
+			reader = new CursorReader<T>(type, cursor);
+       return reader.read(cursor);
     }
 
     /**
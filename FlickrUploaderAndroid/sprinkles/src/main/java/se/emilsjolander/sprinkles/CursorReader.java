@@ -0,0 +1,64 @@
+package se.emilsjolander.sprinkles;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import android.database.Cursor;
+
+/**
+ * Builds models from the rows of one cursor. The index of each column is looked up once for the
+ * whole cursor instead of by name for every row.
+ * <p>
+ * A cached instance waiting for a deferred save is returned as it is: its changes are newer than the
+ * row, and reading the row would lose them before they are saved.
+ */
+class CursorReader<T extends Model> {
+
+	private final Class<T> resultClass;
+	private final ModelInfo info;
+	private final ModelInfo.ColumnField[] columns;
+	private final int[] indexes;
+	private final int primaryKeyIndex;
+	private final boolean allColumns;
+
+	CursorReader(Class<T> resultClass, Cursor c) {
+		this.resultClass = resultClass;
+		this.info = ModelInfo.from(resultClass);
+
+		final List<ModelInfo.ColumnField> found = new ArrayList<ModelInfo.ColumnField>(info.columns.size());
+		final List<Integer> foundIndexes = new ArrayList<Integer>(info.columns.size());
+		for (ModelInfo.ColumnField column : info.columns) {
+			int index = c.getColumnIndex(column.name);
+			if (index >= 0) {
+				found.add(column);
+				foundIndexes.add(index);
+			}
+		}
+		columns = found.toArray(new ModelInfo.ColumnField[found.size()]);
+		indexes = new int[columns.length];
+		for (int i = 0; i < indexes.length; i++) {
+			indexes[i] = foundIndexes.get(i);
+		}
+		primaryKeyIndex = info.primaryKeys.isEmpty() ? -1 : c.getColumnIndex(info.primaryKeys.get(0).name);
+		allColumns = found.containsAll(info.writtenColumns);
+	}
+
+	/**
+	 * @return the model at the current position of the cursor
+	 */
+	T read(Cursor c) {
+		try {
+			T result = Utils.getInstance(resultClass, info, c, primaryKeyIndex);
+			if (result.isWritePending()) {
+				return result;
+			}
+			for (int i = 0; i < columns.length; i++) {
+				columns[i].read(c, indexes[i], result);
+			}
+			result.onLoaded(info, allColumns);
+			return result;
+		} catch (Exception e) {
+			throw new RuntimeException(e);
+		}
+	}
+}
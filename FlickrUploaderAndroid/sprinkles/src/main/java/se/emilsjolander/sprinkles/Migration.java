@@ -1,9 +1,12 @@
 package se.emilsjolander.sprinkles;
 
+import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
 
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import se.emilsjolander.sprinkles.annotations.ConflictClause;
 import se.emilsjolander.sprinkles.exceptions.NoSuchColumnFoundException;
@@ -18,9 +21,33 @@ public class Migration {
 
 	List<String> mStatements = new ArrayList<String>();
 
+	/**
+	 * Statements, by index, that add a column and should be skipped if the column is already there
+	 */
+	Map<Integer, String[]> mOptionalColumns = new HashMap<Integer, String[]>();
+
 	void execute(SQLiteDatabase db) {
-		for (String sql : mStatements) {
-			db.execSQL(sql);
+		for (int i = 0; i < mStatements.size(); i++) {
+			String[] tableColumn = mOptionalColumns.get(i);
+			if (tableColumn != null && hasColumn(db, tableColumn[0], tableColumn[1])) {
+				continue;
+			}
+			db.execSQL(mStatements.get(i));
+		}
+	}
+
+	private static boolean hasColumn(SQLiteDatabase db, String tableName, String columnName) {
+		Cursor c = db.rawQuery("PRAGMA table_info(" + tableName + ")", null);
+		try {
+			int nameIndex = c.getColumnIndexOrThrow("name");
+			while (c.moveToNext()) {
+				if (columnName.equals(c.getString(nameIndex))) {
+					return true;
+				}
+			}
+			return false;
+		} finally {
+			c.close();
 		}
 	}
 
@@ -172,6 +199,21 @@ public class Migration {
 		return this;
 	}
 
+	/**
+	 * Add a column, unless the table already has it. Use this for columns added to a table that an
+	 * earlier migration creates, since fresh installs create that table with all current columns.
+	 *
+	 * @param clazz      The class representing the table which should hold the new model.
+	 * @param columnName The tableName of the new column. The type of the new column is taken from the
+	 *                   class.
+	 * @return this Migration instance
+	 */
+	public Migration addColumnIfMissing(Class<? extends Model> clazz, String columnName) {
+		addColumn(clazz, columnName);
+		mOptionalColumns.put(mStatements.size() - 1, new String[] { Utils.getTableName(clazz), columnName });
+		return this;
+	}
+
     public Migration createIndex(String indexName, boolean unique, Class<? extends Model> clazz, String... columnNames) {
         StringBuilder statement = new StringBuilder();
         statement.append("CREATE ");
@@ -1,7 +1,8 @@
 package se.emilsjolander.sprinkles;
 
+import java.util.List;
+
 import se.emilsjolander.sprinkles.exceptions.ContentValuesEmptyException;
-import android.content.ContentValues;
 import android.os.AsyncTask;
 
 public abstract class Model {
@@ -17,7 +18,8 @@ public abstract class Model {
 	}
 
 	/**
-	 * Override to perform an action before this model is created
+	 * Override to perform an action before this model is created. When it is not known whether the model was already saved, this is called after
+	 * beforeSave(), once the update found no row.
 	 */
 	protected void beforeCreate() {
 		// optionally implemented by subclass
@@ -54,10 +56,32 @@ public abstract class Model {
 
 	int exists = -1;
 
+	/**
+	 * The values last read from or written to the database, null if unknown
+	 */
+	volatile ModelSnapshot snapshot;
+
+	/**
+	 * Whether changes of this model wait for a deferred save, which reading its row again would lose
+	 */
+	private volatile boolean writePending;
+
 	public void setExist(boolean exists) {
 		this.exists = exists ? 0 : 1;
 	}
 
+	/**
+	 * Mark this model as changed and waiting to be saved later, or no longer waiting. A query doesn't
+	 * read the row of a model waiting to be saved again, to keep its changes.
+	 */
+	public void setWritePending(boolean writePending) {
+		this.writePending = writePending;
+	}
+
+	boolean isWritePending() {
+		return writePending;
+	}
+
 	/**
 	 * Save this model to the database. If this model has an @AutoIncrementPrimaryKey annotation on a property than that property will be set when this method returns.
 	 * 
@@ -86,39 +110,41 @@ public abstract class Model {
 			return false;
 		}
 
-		boolean doesExist = exists();
-		if (!doesExist) {
+		final ModelInfo info = ModelInfo.from(getClass());
+		if (info.writtenColumns.isEmpty()) {
+			throw new ContentValuesEmptyException();
+		}
+
+		if (exists > 0) {
 			beforeCreate();
 			Utils.putInCache(this);
+			beforeSave();
+			return insert(t, info);
 		}
 
 		beforeSave();
-		final ContentValues cv = Utils.getContentValues(this);
-		if (cv.size() == 0) {
-			throw new ContentValuesEmptyException();
-		}
-		final String tableName = Utils.getTableName(getClass());
-		if (doesExist) {
-			if (t.update(tableName, cv, Utils.getWhereStatement(this)) == 0) {
+		final ModelSnapshot current = ModelSnapshot.take(info, this);
+		if (exists < 0) {
+			// the update tells whether the row exists, there is no need to look it up first
+			if (t.update(this, info.writtenColumns, current) == 0) {
+				beforeCreate();
+				Utils.putInCache(this);
+				return insert(t, info);
+			}
+		} else if (snapshot == null) {
+			if (t.update(this, info.writtenColumns, current) == 0) {
 				return false;
 			}
 		} else {
-			long id = t.insert(tableName, cv);
-			if (id == -1) {
-				return false;
+			final List<ModelInfo.StaticColumnField> changed = snapshot.getChangedColumns(info, current);
+			if (changed.isEmpty()) {
+				return true;
 			}
-
-			// set the @AutoIncrement column if one exists
-			final ModelInfo info = ModelInfo.from(getClass());
-			if (info.autoIncrementColumn != null) {
-				info.autoIncrementColumn.field.setAccessible(true);
-				try {
-					info.autoIncrementColumn.field.set(this, id);
-				} catch (Exception e) {
-					throw new RuntimeException(e);
-				}
+			if (t.update(this, changed, current) == 0) {
+				return false;
 			}
 		}
+		snapshot = current;
 
 		// t.addOnTransactionCommittedListener(new OnTransactionCommittedListener() {
 		//
@@ -133,6 +159,49 @@ public abstract class Model {
 		return true;
 	}
 
+	private boolean insert(Transaction t, ModelInfo info) {
+		final ModelSnapshot current = ModelSnapshot.take(info, this);
+		long id = t.insert(this, current);
+		if (id == -1) {
+			return false;
+		}
+
+		// set the @AutoIncrement column if one exists
+		if (info.autoIncrementColumn != null) {
+			info.autoIncrementColumn.field.setAccessible(true);
+			try {
+				info.autoIncrementColumn.field.set(this, id);
+			} catch (Exception e) {
+				throw new RuntimeException(e);
+			}
+		}
+
+		setExist(true);
+		snapshot = current;
+
+		return true;
+	}
+
+	/**
+	 * Take the values just read from the database as the saved ones.
+	 * 
+	 * @param allColumns
+	 *            whether every written column was read, otherwise the next save writes them all
+	 */
+	void onLoaded(ModelInfo info, boolean allColumns) {
+		setExist(true);
+		snapshot = allColumns ? ModelSnapshot.take(info, this) : null;
+	}
+
+	/**
+	 * Forget what is known of the saved state, after the transaction it was written in was rolled
+	 * back.
+	 */
+	void onRolledBack() {
+		exists = -1;
+		snapshot = null;
+	}
+
 	/**
 	 * Call save() asynchronously
 	 */
@@ -182,7 +251,9 @@ public abstract class Model {
 	 *            The transaction to delete this model in
 	 */
 	final public void delete(Transaction t) {
-		t.delete(Utils.getTableName(getClass()), Utils.getWhereStatement(this));
+		t.delete(this);
+		setExist(false);
+		snapshot = null;
 		Utils.removeFromCache(this);
 		// t.addOnTransactionCommittedListener(new OnTransactionCommittedListener() {
 		//
@@ -0,0 +1,192 @@
+package se.emilsjolander.sprinkles;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+
+/**
+ * The instances of a {@link se.emilsjolander.sprinkles.annotations.Cacheable} model class by
+ * primary key, so that a row is always read into the same instance.
+ * <p>
+ * Keys are kept as longs in an open addressing table, without boxing or building a key for each
+ * lookup. The instances are held through weak references unless the class asks otherwise, so an
+ * instance leaves the cache once nothing else uses it, and the same row is never loaded into two
+ * instances in use at the same time.
+ */
+class ModelCache {
+
+	private static final int INITIAL_CAPACITY = 64;
+
+	private static class Entry extends WeakReference<Model> {
+		final long key;
+
+		Entry(long key, Model instance, ReferenceQueue<Model> queue) {
+			super(instance, queue);
+			this.key = key;
+		}
+	}
+
+	private final boolean weak;
+	private final ReferenceQueue<Model> queue = new ReferenceQueue<Model>();
+
+	private long[] keys = new long[INITIAL_CAPACITY];
+
+	/**
+	 * The instances, or their entries when weak, null for a free slot
+	 */
+	private Object[] values = new Object[INITIAL_CAPACITY];
+
+	private int size = 0;
+
+	ModelCache(boolean weak) {
+		this.weak = weak;
+	}
+
+	synchronized Model get(long key) {
+		final int slot = find(key);
+		return slot < 0 ? null : instanceAt(slot);
+	}
+
+	/**
+	 * @return the instance already cached for the key, or the given one which is now cached
+	 */
+	synchronized Model putIfAbsent(long key, Model instance) {
+		purge();
+		final int slot = find(key);
+		if (slot >= 0) {
+			final Model cached = instanceAt(slot);
+			if (cached != null) {
+				return cached;
+			}
+			values[slot] = wrap(key, instance);
+		} else {
+			insert(key, instance);
+		}
+		return instance;
+	}
+
+	synchronized void put(long key, Model instance) {
+		purge();
+		final int slot = find(key);
+		if (slot >= 0) {
+			values[slot] = wrap(key, instance);
+		} else {
+			insert(key, instance);
+		}
+	}
+
+	/**
+	 * Remove the key if it is cached with this instance, or with one that was garbage collected.
+	 */
+	synchronized void remove(long key, Model instance) {
+		final int slot = find(key);
+		if (slot >= 0) {
+			final Model cached = instanceAt(slot);
+			if (cached == null || cached == instance) {
+				removeSlot(slot);
+			}
+		}
+	}
+
+	synchronized int size() {
+		purge();
+		return size;
+	}
+
+	private Model instanceAt(int slot) {
+		final Object value = values[slot];
+		return weak ? ((Entry) value).get() : (Model) value;
+	}
+
+	private Object wrap(long key, Model instance) {
+		return weak ? new Entry(key, instance, queue) : instance;
+	}
+
+	private int indexOf(long key) {
+		long h = key * 0x9E3779B97F4A7C15L;
+		return (int) (h ^ (h >>> 32)) & (values.length - 1);
+	}
+
+	/**
+	 * @return the slot of the key, -1 if absent
+	 */
+	private int find(long key) {
+		final int mask = values.length - 1;
+		for (int i = indexOf(key); values[i] != null; i = (i + 1) & mask) {
+			if (keys[i] == key) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	private void insert(long key, Model instance) {
+		if ((size + 1) * 2 > values.length) {
+			resize(values.length * 2);
+		}
+		final int mask = values.length - 1;
+		int i = indexOf(key);
+		while (values[i] != null) {
+			i = (i + 1) & mask;
+		}
+		keys[i] = key;
+		values[i] = wrap(key, instance);
+		size++;
+	}
+
+	/**
+	 * Free the slot, moving back the following keys of the run that can't be found anymore
+	 * otherwise.
+	 */
+	private void removeSlot(int slot) {
+		final int mask = values.length - 1;
+		values[slot] = null;
+		size--;
+		int free = slot;
+		for (int i = (slot + 1) & mask; values[i] != null; i = (i + 1) & mask) {
+			final int home = indexOf(keys[i]);
+			// the key stays if its home is cyclically within (free, i]
+			final boolean stays = free <= i ? (free < home && home <= i) : (free < home || home <= i);
+			if (!stays) {
+				keys[free] = keys[i];
+				values[free] = values[i];
+				values[i] = null;
+				free = i;
+			}
+		}
+	}
+
+	private void resize(int capacity) {
+		final long[] oldKeys = keys;
+		final Object[] oldValues = values;
+		keys = new long[capacity];
+		values = new Object[capacity];
+		size = 0;
+		final int mask = capacity - 1;
+		for (int j = 0; j < oldValues.length; j++) {
+			final Object value = oldValues[j];
+			if (value == null || (weak && ((Entry) value).get() == null)) {
+				continue;
+			}
+			int i = indexOf(oldKeys[j]);
+			while (values[i] != null) {
+				i = (i + 1) & mask;
+			}
+			keys[i] = oldKeys[j];
+			values[i] = value;
+			size++;
+		}
+	}
+
+	/**
+	 * Drop the entries of the instances that were garbage collected.
+	 */
+	private void purge() {
+		Entry entry;
+		while ((entry = (Entry) queue.poll()) != null) {
+			final int slot = find(entry.key);
+			if (slot >= 0 && values[slot] == entry) {
+				removeSlot(slot);
+			}
+		}
+	}
+}
@@ -2,11 +2,11 @@ package se.emilsjolander.sprinkles;
 
 import java.lang.reflect.Field;
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
-import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import se.emilsjolander.sprinkles.annotations.AutoIncrementPrimaryKey;
 import se.emilsjolander.sprinkles.annotations.Cacheable;
@@ -24,14 +24,204 @@ import se.emilsjolander.sprinkles.exceptions.CannotCascadeDeleteNonForeignKey;
 import se.emilsjolander.sprinkles.exceptions.DuplicateColumnException;
 import se.emilsjolander.sprinkles.exceptions.EmptyTableException;
 import se.emilsjolander.sprinkles.exceptions.NoPrimaryKeysException;
+import se.emilsjolander.sprinkles.typeserializers.BooleanSerializer;
+import se.emilsjolander.sprinkles.typeserializers.DoubleSerializer;
+import se.emilsjolander.sprinkles.typeserializers.FloatSerializer;
+import se.emilsjolander.sprinkles.typeserializers.IntSerializer;
+import se.emilsjolander.sprinkles.typeserializers.LongSerializer;
 import se.emilsjolander.sprinkles.typeserializers.SqlType;
+import se.emilsjolander.sprinkles.typeserializers.StringSerializer;
+import se.emilsjolander.sprinkles.typeserializers.TypeSerializer;
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteProgram;
 
 class ModelInfo {
 
 	public static class ColumnField {
+		private static final int ACCESS_SERIALIZER = 0;
+		private static final int ACCESS_INT = 1;
+		private static final int ACCESS_LONG = 2;
+		private static final int ACCESS_BOOLEAN = 3;
+		private static final int ACCESS_DOUBLE = 4;
+		private static final int ACCESS_FLOAT = 5;
+		private static final int ACCESS_STRING = 6;
+
 		String name;
 		String sqlType;
 		Field field;
+		TypeSerializer serializer;
+
+		/**
+		 * How the field is read and written. Fields of the standard types are copied from and to the
+		 * cursor directly, without boxing and without going through their serializer.
+		 */
+		private int access;
+
+		/**
+		 * Index of the value of the column in a {@link ModelSnapshot}, among the primitive values or
+		 * among the others
+		 */
+		int slot = -1;
+
+		/**
+		 * Resolve once everything needed to read and write the field.
+		 */
+		void bind(Field field) {
+			this.field = field;
+			field.setAccessible(true);
+			final Class<?> type = field.getType();
+			serializer = Sprinkles.sInstance.getTypeSerializer(type);
+			sqlType = serializer.getSqlType().name();
+
+			final Class<?> serializerClass = serializer.getClass();
+			if (type == int.class && serializerClass == IntSerializer.class) {
+				access = ACCESS_INT;
+			} else if (type == long.class && serializerClass == LongSerializer.class) {
+				access = ACCESS_LONG;
+			} else if (type == boolean.class && serializerClass == BooleanSerializer.class) {
+				access = ACCESS_BOOLEAN;
+			} else if (type == double.class && serializerClass == DoubleSerializer.class) {
+				access = ACCESS_DOUBLE;
+			} else if (type == float.class && serializerClass == FloatSerializer.class) {
+				access = ACCESS_FLOAT;
+			} else if (type == String.class && serializerClass == StringSerializer.class) {
+				access = ACCESS_STRING;
+			} else {
+				access = ACCESS_SERIALIZER;
+			}
+		}
+
+		/**
+		 * @param index
+		 *            the index of this column in the cursor
+		 */
+		void read(Cursor c, int index, Object target) throws IllegalAccessException {
+			switch (access) {
+			case ACCESS_INT:
+				field.setInt(target, c.getInt(index));
+				break;
+			case ACCESS_LONG:
+				field.setLong(target, c.getLong(index));
+				break;
+			case ACCESS_BOOLEAN:
+				field.setBoolean(target, c.getInt(index) > 0);
+				break;
+			case ACCESS_DOUBLE:
+				field.setDouble(target, c.getDouble(index));
+				break;
+			case ACCESS_FLOAT:
+				field.setFloat(target, c.getFloat(index));
+				break;
+			case ACCESS_STRING:
+				field.set(target, c.getString(index));
+				break;
+			default:
+				field.set(target, serializer.unpack(c, name));
+				break;
+			}
+		}
+
+		boolean isIntegral() {
+			return access == ACCESS_INT || access == ACCESS_LONG;
+		}
+
+		boolean isPrimitive() {
+			return access != ACCESS_SERIALIZER && access != ACCESS_STRING;
+		}
+
+		/**
+		 * @return the value of a primitive field as a long, doubles and floats by their bits
+		 */
+		long getBits(Object source) throws IllegalAccessException {
+			switch (access) {
+			case ACCESS_INT:
+				return field.getInt(source);
+			case ACCESS_LONG:
+				return field.getLong(source);
+			case ACCESS_BOOLEAN:
+				return field.getBoolean(source) ? 1 : 0;
+			case ACCESS_DOUBLE:
+				return Double.doubleToLongBits(field.getDouble(source));
+			case ACCESS_FLOAT:
+				return Float.floatToIntBits(field.getFloat(source));
+			default:
+				throw new IllegalStateException(name + " is not primitive");
+			}
+		}
+
+		/**
+		 * @return the value of a non primitive field as it is written to the database
+		 */
+		@SuppressWarnings("unchecked")
+		Object getValue(Object source) throws IllegalAccessException {
+			if (access == ACCESS_STRING) {
+				return field.get(source);
+			}
+			// the serialized value rather than the field, which may be modified in place
+			final ContentValues values = new ContentValues(1);
+			serializer.pack(field.get(source), values, name);
+			return values.get(name);
+		}
+
+		/**
+		 * Bind a value returned by {@link #getBits(Object)} as an argument of a compiled statement.
+		 */
+		void bindBits(SQLiteProgram program, int index, long bits) {
+			switch (access) {
+			case ACCESS_DOUBLE:
+				program.bindDouble(index, Double.longBitsToDouble(bits));
+				break;
+			case ACCESS_FLOAT:
+				program.bindDouble(index, Float.intBitsToFloat((int) bits));
+				break;
+			default:
+				program.bindLong(index, bits);
+				break;
+			}
+		}
+
+		/**
+		 * Bind the value of the field as an argument of a compiled statement.
+		 *
+		 * @param index
+		 *            the 1-based index of the argument
+		 */
+		@SuppressWarnings("unchecked")
+		void bindArg(SQLiteProgram program, int index, Object source) throws IllegalAccessException {
+			switch (access) {
+			case ACCESS_INT:
+				program.bindLong(index, field.getInt(source));
+				break;
+			case ACCESS_LONG:
+				program.bindLong(index, field.getLong(source));
+				break;
+			case ACCESS_BOOLEAN:
+				program.bindLong(index, field.getBoolean(source) ? 1 : 0);
+				break;
+			case ACCESS_DOUBLE:
+				program.bindDouble(index, field.getDouble(source));
+				break;
+			case ACCESS_FLOAT:
+				program.bindDouble(index, field.getFloat(source));
+				break;
+			case ACCESS_STRING:
+				final String value = (String) field.get(source);
+				if (value == null) {
+					program.bindNull(index);
+				} else {
+					program.bindString(index, value);
+				}
+				break;
+			default:
+				// other types only know how to put themselves in ContentValues
+				final ContentValues values = new ContentValues(1);
+				serializer.pack(field.get(source), values, name);
+				DatabaseUtils.bindObjectToProgram(program, index, values.get(name));
+				break;
+			}
+		}
 
 		@Override
 		public boolean equals(Object o) {
@@ -68,7 +258,7 @@ class ModelInfo {
 
 	}
 
-	private static Map<Class<? extends Model>, ModelInfo> cache = new HashMap<Class<? extends Model>, ModelInfo>();
+	private static final ConcurrentMap<Class<? extends Model>, ModelInfo> cache = new ConcurrentHashMap<Class<? extends Model>, ModelInfo>();
 
 	String tableName;
 	Set<ColumnField> columns = new HashSet<ColumnField>();
@@ -79,13 +269,35 @@ class ModelInfo {
 	StaticColumnField autoIncrementColumn;
 	boolean cacheable = false;
 
+	/**
+	 * The instances of a cacheable model, by primary key
+	 */
+	ModelCache instanceCache;
+
+	/**
+	 * The columns written on insert and update, in the order of the statement arguments
+	 */
+	List<StaticColumnField> writtenColumns = new ArrayList<StaticColumnField>();
+
+	/**
+	 * Sizes of a {@link ModelSnapshot} of the written columns
+	 */
+	int primitiveSlots;
+	int objectSlots;
+
+	String whereSql;
+	String insertSql;
+	String updateSql;
+	String deleteSql;
+
 	private ModelInfo() {
 		// hide contructor
 	}
 
 	static ModelInfo from(Class<? extends Model> clazz) {
-		if (cache.containsKey(clazz)) {
-			return cache.get(clazz);
+		final ModelInfo cached = cache.get(clazz);
+		if (cached != null) {
+			return cached;
 		}
 		ModelInfo info = new ModelInfo();
 
@@ -94,8 +306,7 @@ class ModelInfo {
 			if (field.isAnnotationPresent(DynamicColumn.class)) {
 				DynamicColumnField column = new DynamicColumnField();
 				column.name = field.getAnnotation(DynamicColumn.class).value();
-				column.sqlType = Sprinkles.sInstance.getTypeSerializer(field.getType()).getSqlType().name();
-				column.field = field;
+				column.bind(field);
 				info.dynamicColumns.add(column);
 				if (!info.columns.add(column)) {
 					throw new DuplicateColumnException(column.name);
@@ -119,8 +330,7 @@ class ModelInfo {
 					throw new CannotCascadeDeleteNonForeignKey();
 				}
 
-				column.sqlType = Sprinkles.sInstance.getTypeSerializer(field.getType()).getSqlType().name();
-				column.field = field;
+				column.bind(field);
 
 				if (column.isAutoIncrement && !column.sqlType.equals(SqlType.INTEGER.name())) {
 					throw new AutoIncrementMustBeIntegerException(column.name);
@@ -158,6 +368,7 @@ class ModelInfo {
 			info.tableName = Utils.getTableName((Class<? extends Model>) clazz);
 			if (clazz.isAnnotationPresent(Cacheable.class)) {
 				info.cacheable = true;
+				info.instanceCache = new ModelCache(clazz.getAnnotation(Cacheable.class).weak());
 			}
 
 			try {
@@ -173,9 +384,73 @@ class ModelInfo {
 			if (info.autoIncrementColumn != null && info.primaryKeys.size() > 1) {
 				throw new IllegalStateException("A model with a field marked as @AutoIncrementPrimaryKey may not mark any other field with @PrimaryKey");
 			}
+			if (info.cacheable && (info.primaryKeys.size() > 1 || !info.primaryKeys.get(0).isIntegral())) {
+				throw new IllegalStateException("A @Cacheable model must have a single int or long primary key");
+			}
+
+			info.buildStatements();
 		}
 
-		cache.put(clazz, info);
-		return info;
+		// another thread may have built it meanwhile, only one may hold the instance cache
+		final ModelInfo previous = cache.putIfAbsent(clazz, info);
+		return previous != null ? previous : info;
+	}
+
+	/**
+	 * Build the statements used to write the model, with every value as an argument so that each
+	 * statement only needs to be compiled once.
+	 */
+	private void buildStatements() {
+		for (StaticColumnField column : staticColumns) {
+			if (!column.isAutoIncrement) {
+				writtenColumns.add(column);
+				column.slot = column.isPrimitive() ? primitiveSlots++ : objectSlots++;
+			}
+		}
+
+		final StringBuilder where = new StringBuilder(" WHERE ");
+		for (int i = 0; i < primaryKeys.size(); i++) {
+			if (i > 0) {
+				where.append(" AND ");
+			}
+			where.append(primaryKeys.get(i).name).append("=?");
+		}
+
+		whereSql = where.toString();
+
+		final StringBuilder insert = new StringBuilder("INSERT INTO ").append(tableName).append(" (");
+		for (int i = 0; i < writtenColumns.size(); i++) {
+			if (i > 0) {
+				insert.append(',');
+			}
+			insert.append(writtenColumns.get(i).name);
+		}
+		insert.append(") VALUES (");
+		for (int i = 0; i < writtenColumns.size(); i++) {
+			insert.append(i > 0 ? ",?" : "?");
+		}
+		insert.append(')');
+
+		insertSql = insert.toString();
+		updateSql = getUpdateSql(writtenColumns);
+		deleteSql = "DELETE FROM " + tableName + whereSql;
+	}
+
+	/**
+	 * @return the statement updating only these columns, with their values then the primary keys as
+	 *         arguments
+	 */
+	String getUpdateSql(List<StaticColumnField> columns) {
+		if (columns == writtenColumns && updateSql != null) {
+			return updateSql;
+		}
+		final StringBuilder update = new StringBuilder("UPDATE ").append(tableName).append(" SET ");
+		for (int i = 0; i < columns.size(); i++) {
+			if (i > 0) {
+				update.append(',');
+			}
+			update.append(columns.get(i).name).append("=?");
+		}
+		return update.append(whereSql).toString();
 	}
 }
@@ -0,0 +1,95 @@
+package se.emilsjolander.sprinkles;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteProgram;
+
+/**
+ * The values of the written columns of a model, read once. A save writes the values of a snapshot
+ * and then keeps it as the state of the database, so that the next save only writes the columns
+ * changed since, even if the model is modified by another thread meanwhile. Primitive values are
+ * kept as longs, without boxing.
+ */
+class ModelSnapshot {
+
+	private final long[] bits;
+	private final Object[] values;
+
+	private ModelSnapshot(ModelInfo info) {
+		bits = new long[info.primitiveSlots];
+		values = new Object[info.objectSlots];
+	}
+
+	/**
+	 * Read the current values of the written columns of the model.
+	 */
+	static ModelSnapshot take(ModelInfo info, Model model) {
+		final ModelSnapshot snapshot = new ModelSnapshot(info);
+		try {
+			for (ModelInfo.StaticColumnField column : info.writtenColumns) {
+				if (column.isPrimitive()) {
+					snapshot.bits[column.slot] = column.getBits(model);
+				} else {
+					snapshot.values[column.slot] = column.getValue(model);
+				}
+			}
+		} catch (IllegalAccessException e) {
+			throw new RuntimeException(e);
+		}
+		return snapshot;
+	}
+
+	/**
+	 * @return the written columns whose value differs between this snapshot and the current one, in
+	 *         the order of {@link ModelInfo#writtenColumns}
+	 */
+	List<ModelInfo.StaticColumnField> getChangedColumns(ModelInfo info, ModelSnapshot current) {
+		List<ModelInfo.StaticColumnField> changed = null;
+		for (ModelInfo.StaticColumnField column : info.writtenColumns) {
+			final boolean same;
+			if (column.isPrimitive()) {
+				same = bits[column.slot] == current.bits[column.slot];
+			} else {
+				same = isSame(values[column.slot], current.values[column.slot]);
+			}
+			if (!same) {
+				if (changed == null) {
+					changed = new ArrayList<ModelInfo.StaticColumnField>();
+				}
+				changed.add(column);
+			}
+		}
+		if (changed == null) {
+			return Collections.emptyList();
+		}
+		return changed;
+	}
+
+	/**
+	 * Bind the value of the column in this snapshot as an argument of a compiled statement.
+	 */
+	void bindArg(SQLiteProgram program, int index, ModelInfo.StaticColumnField column) {
+		if (column.isPrimitive()) {
+			column.bindBits(program, index, bits[column.slot]);
+		} else {
+			DatabaseUtils.bindObjectToProgram(program, index, values[column.slot]);
+		}
+	}
+
+	private static boolean isSame(Object saved, Object current) {
+		if (saved == current) {
+			return true;
+		}
+		if (saved == null || current == null) {
+			return false;
+		}
+		if (saved instanceof byte[] && current instanceof byte[]) {
+			return Arrays.equals((byte[]) saved, (byte[]) current);
+		}
+		return saved.equals(current);
+	}
+}
@@ -1,8 +1,5 @@
 package se.emilsjolander.sprinkles;
 
-import java.util.Arrays;
-import java.util.List;
-
 import android.annotation.TargetApi;
 import android.app.LoaderManager;
 import android.app.LoaderManager.LoaderCallbacks;
@@ -55,8 +52,7 @@ public final class OneQuery<T extends Model> {
 
 		T result = null;
 		if (c.moveToFirst()) {
-			List<String> colNames = Arrays.asList(c.getColumnNames());
-			result = Utils.getResultFromCursor(resultClass, c, colNames);
+			result = new CursorReader<T>(resultClass, c).read(c);
 		}
 
 		c.close();
@@ -115,8 +111,7 @@ public final class OneQuery<T extends Model> {
 			public void onLoadFinished(Loader<Cursor> loader, Cursor c) {
 				T result = null;
 				if (c.moveToFirst()) {
-					List<String> colNames = Arrays.asList(c.getColumnNames());
-					result = Utils.getResultFromCursor(resultClass, c, colNames);
+					result = new CursorReader<T>(resultClass, c).read(c);
 				}
 
 				if (!handler.handleResult(result)) {
@@ -1,10 +1,13 @@
 package se.emilsjolander.sprinkles;
 
-import android.content.ContentValues;
+import android.database.SQLException;
 import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
 
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 /**
  * Transaction represents a database transaction in sprinkles.
@@ -20,6 +23,16 @@ public final class Transaction {
 	private boolean mSuccessful;
 	private List<OnTransactionCommittedListener> mOnTransactionCommittedListeners = new ArrayList<OnTransactionCommittedListener>();
 
+	/**
+	 * Statements compiled in this transaction, by sql, reused for every model of the same table
+	 */
+	private Map<String, SQLiteStatement> mStatements = new HashMap<String, SQLiteStatement>();
+
+	/**
+	 * Models written in this transaction, whose saved state is unknown again if it is rolled back
+	 */
+	private List<Model> mWritten = new ArrayList<Model>();
+
 	public Transaction() {
 		mDb = Sprinkles.getDatabase();
 		mDb.beginTransaction();
@@ -48,11 +61,23 @@ public final class Transaction {
      * This will commit or rollback the transaction depending on whether is was marked as successful or not
      */
 	public void finish() {
+		for (SQLiteStatement statement : mStatements.values()) {
+			statement.close();
+		}
+		mStatements.clear();
+
 		if (mSuccessful) {
 			mDb.setTransactionSuccessful();
 		}
 		mDb.endTransaction();
 
+		if (!mSuccessful) {
+			for (Model model : mWritten) {
+				model.onRolledBack();
+			}
+		}
+		mWritten.clear();
+
 		if (mSuccessful) {
 			for (OnTransactionCommittedListener listener : mOnTransactionCommittedListeners) {
 				listener.onTransactionCommitted();
@@ -60,16 +85,79 @@ public final class Transaction {
 		}
 	}
 
-	long insert(String table, ContentValues values) {
-		return mDb.insert(table, null, values);
+	/**
+	 * @return the row id of the new row, or -1 if the insert failed
+	 */
+	long insert(Model model, ModelSnapshot values) {
+		final ModelInfo info = ModelInfo.from(model.getClass());
+		final SQLiteStatement statement = getStatement(info.insertSql);
+		bindValues(statement, info.writtenColumns, values);
+		mWritten.add(model);
+		try {
+			return statement.executeInsert();
+		} catch (SQLException e) {
+			// like SQLiteDatabase.insert()
+			return -1;
+		}
+	}
+
+	/**
+	 * @return the number of rows updated
+	 */
+	int update(Model model, List<ModelInfo.StaticColumnField> columns, ModelSnapshot values) {
+		final ModelInfo info = ModelInfo.from(model.getClass());
+		final SQLiteStatement statement = getStatement(info.getUpdateSql(columns));
+		final int index = bindValues(statement, columns, values);
+		bindColumns(statement, info.primaryKeys, index, model);
+		mWritten.add(model);
+		return statement.executeUpdateDelete();
 	}
 
-	int update(String table, ContentValues values, String where) {
-		return mDb.update(table, values, where, null);
+	/**
+	 * @return the number of rows deleted
+	 */
+	int delete(Model model) {
+		final ModelInfo info = ModelInfo.from(model.getClass());
+		final SQLiteStatement statement = getStatement(info.deleteSql);
+		bindColumns(statement, info.primaryKeys, 1, model);
+		mWritten.add(model);
+		return statement.executeUpdateDelete();
 	}
 
-	int delete(String table, String where) {
-		return mDb.delete(table, where, null);
+	private SQLiteStatement getStatement(String sql) {
+		SQLiteStatement statement = mStatements.get(sql);
+		if (statement == null) {
+			statement = mDb.compileStatement(sql);
+			mStatements.put(sql, statement);
+		} else {
+			statement.clearBindings();
+		}
+		return statement;
+	}
+
+	/**
+	 * @return the index of the next argument
+	 */
+	private static int bindValues(SQLiteStatement statement, List<ModelInfo.StaticColumnField> columns, ModelSnapshot values) {
+		int index = 1;
+		for (ModelInfo.StaticColumnField column : columns) {
+			values.bindArg(statement, index++, column);
+		}
+		return index;
+	}
+
+	/**
+	 * @return the index of the next argument
+	 */
+	private static int bindColumns(SQLiteStatement statement, List<ModelInfo.StaticColumnField> columns, int index, Model model) {
+		try {
+			for (ModelInfo.StaticColumnField column : columns) {
+				column.bindArg(statement, index++, model);
+			}
+		} catch (IllegalAccessException e) {
+			throw new RuntimeException(e);
+		}
+		return index;
 	}
 
 	void addOnTransactionCommittedListener(OnTransactionCommittedListener listener) {
@@ -2,36 +2,26 @@ package se.emilsjolander.sprinkles;
 
 import java.lang.reflect.Array;
 import java.lang.reflect.Field;
-import java.util.HashMap;
-import java.util.List;
-import java.util.Map;
 
 import se.emilsjolander.sprinkles.annotations.Table;
 import se.emilsjolander.sprinkles.exceptions.NoTableAnnotationException;
 import se.emilsjolander.sprinkles.typeserializers.TypeSerializer;
-import android.content.ContentValues;
 import android.database.Cursor;
 import android.net.Uri;
 
 public class Utils {
 
 	@SuppressWarnings("unchecked")
-	static <T extends Model> T getInstance(Class<T> resultClass, final ModelInfo info, final Cursor c) throws InstantiationException, IllegalAccessException {
+	static <T extends Model> T getInstance(Class<T> resultClass, final ModelInfo info, final Cursor c, int primaryKeyIndex) throws InstantiationException, IllegalAccessException {
 		if (info.cacheable) {
-			String key = null;
-			for (ModelInfo.ColumnField column : info.primaryKeys) {
-				int columnIndex = c.getColumnIndex(column.name);
-				int primaryKeyValue = c.getInt(columnIndex);
-				key = resultClass.getSimpleName() + "_" + primaryKeyValue;
-				Model result = instances.get(key);
-				if (result != null) {
-					// Log.i("Sprinkles", "returning cached object : " + result);
-					return (T) result;
-				}
+			long primaryKeyValue = c.getLong(primaryKeyIndex);
+			Model result = info.instanceCache.get(primaryKeyValue);
+			if (result != null) {
+				// Log.i("Sprinkles", "returning cached object : " + result);
+				return (T) result;
 			}
-			T newInstance = resultClass.newInstance();
-			instances.put(key, newInstance);
-			return newInstance;
+			// another thread may be reading the same row, only one instance wins
+			return (T) info.instanceCache.putIfAbsent(primaryKeyValue, resultClass.newInstance());
 		} else {
 			return resultClass.newInstance();
 		}
@@ -40,14 +30,15 @@ public class Utils {
 	@SuppressWarnings("unchecked")
 	public static <T extends Model> T getOrCreate(Class<T> resultClass, int primaryKeyValue) {
 		try {
-			String key = resultClass.getSimpleName() + "_" + primaryKeyValue;
-			Model result = instances.get(key);
+			final ModelInfo info = ModelInfo.from(resultClass);
+			if (!info.cacheable) {
+				return resultClass.newInstance();
+			}
+			Model result = info.instanceCache.get(primaryKeyValue);
 			if (result != null) {
 				return (T) result;
 			}
-			T newInstance = resultClass.newInstance();
-			instances.put(key, newInstance);
-			return newInstance;
+			return (T) info.instanceCache.putIfAbsent(primaryKeyValue, resultClass.newInstance());
 		} catch (Exception e) {
 			throw new RuntimeException("Could not instantiate with " + resultClass.getSimpleName() + " with key " + primaryKeyValue + " : " + e.getMessage(), e);
 		}
@@ -55,15 +46,10 @@ public class Utils {
 
 	public static <T extends Model> void putInCache(T instance) {
 		try {
-			Class<? extends Model> resultClass = instance.getClass();
-			final ModelInfo info = ModelInfo.from(resultClass);
+			final ModelInfo info = ModelInfo.from(instance.getClass());
 			if (info.cacheable) {
-				for (ModelInfo.ColumnField column : info.primaryKeys) {
-					column.field.setAccessible(true);
-					String key = resultClass.getSimpleName() + "_" + column.field.getInt(instance);
-					// Log.i("Sprinkles", "caching object : " + instance);
-					instances.put(key, instance);
-				}
+				// Log.i("Sprinkles", "caching object : " + instance);
+				info.instanceCache.put(info.primaryKeys.get(0).getBits(instance), instance);
 			}
 		} catch (Exception e) {
 			throw new RuntimeException("Error with " + instance + " : " + e.getMessage(), e);
@@ -72,44 +58,15 @@ public class Utils {
 
 	public static <T extends Model> void removeFromCache(T instance) {
 		try {
-			Class<? extends Model> resultClass = instance.getClass();
-			final ModelInfo info = ModelInfo.from(resultClass);
+			final ModelInfo info = ModelInfo.from(instance.getClass());
 			if (info.cacheable) {
-				for (ModelInfo.ColumnField column : info.primaryKeys) {
-					column.field.setAccessible(true);
-					String key = resultClass.getSimpleName() + "_" + column.field.getInt(instance);
-					// Log.i("Sprinkles", "caching object : " + instance);
-					instances.remove(key);
-				}
+				info.instanceCache.remove(info.primaryKeys.get(0).getBits(instance), instance);
 			}
 		} catch (Exception e) {
 			throw new RuntimeException(e);
 		}
 	}
 
-	static final Map<String, Model> instances = new HashMap<String, Model>();
-
-	static <T extends Model> T getResultFromCursor(Class<T> resultClass, Cursor c, List<String> colNames) {
-		try {
-			final ModelInfo info = ModelInfo.from(resultClass);
-			// T result = resultClass.newInstance();
-			T result = getInstance(resultClass, info, c);
-			for (ModelInfo.ColumnField column : info.columns) {
-				if (!colNames.contains(column.name)) {
-					continue;
-				}
-				column.field.setAccessible(true);
-				final Class<?> type = column.field.getType();
-				Object o = Sprinkles.sInstance.getTypeSerializer(type).unpack(c, column.name);
-				column.field.set(result, o);
-			}
-			result.setExist(true);
-			return result;
-		} catch (Exception e) {
-			throw new RuntimeException(e);
-		}
-	}
-
 	static String getWhereStatement(Model m) {
 		final ModelInfo info = ModelInfo.from(m.getClass());
 		final StringBuilder where = new StringBuilder();
@@ -136,28 +93,6 @@ public class Utils {
 		return Utils.insertSqlArgs(where.toString(), args);
 	}
 
-	@SuppressWarnings("unchecked")
-	static ContentValues getContentValues(Model model) {
-		final ModelInfo info = ModelInfo.from(model.getClass());
-		final ContentValues values = new ContentValues();
-
-		for (ModelInfo.StaticColumnField column : info.staticColumns) {
-			if (column.isAutoIncrement) {
-				continue;
-			}
-			column.field.setAccessible(true);
-			Object value;
-			try {
-				value = column.field.get(model);
-			} catch (Exception e) {
-				throw new RuntimeException(e);
-			}
-			Sprinkles.sInstance.getTypeSerializer(column.field.getType()).pack(value, values, column.name);
-		}
-
-		return values;
-	}
-
 	static <T extends Model> Uri getNotificationUri(Class<T> clazz) {
 		return Uri.parse("sprinkles://" + getTableName(clazz));
 	}
@@ -174,12 +109,19 @@ public class Utils {
 		if (args == null) {
 			return sql;
 		}
+		// a single pass, the values themselves may contain question marks
+		final StringBuilder result = new StringBuilder(sql.length() + 16 * args.length);
+		int start = 0;
 		for (Object o : args) {
+			final int mark = sql.indexOf('?', start);
+			if (mark < 0) {
+				break;
+			}
 			TypeSerializer typeSerializer = Sprinkles.sInstance.getTypeSerializer(o.getClass());
-			String sqlObject = typeSerializer.toSql(o);
-			sql = sql.replaceFirst("\\?", sqlObject);
+			result.append(sql, start, mark).append(typeSerializer.toSql(o));
+			start = mark + 1;
 		}
-		return sql;
+		return result.append(sql, start, sql.length()).toString();
 	}
 
 	static Field[] getAllDeclaredFields(Class<?> clazz, Class<?> stopAt) {
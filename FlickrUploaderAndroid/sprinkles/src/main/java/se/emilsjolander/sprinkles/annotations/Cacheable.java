@@ -6,9 +6,14 @@ import java.lang.annotation.RetentionPolicy;
 import java.lang.annotation.Target;
 
 /**
- * Adds an NOT NULL modifier to the underlying database column.
+ * Reads each row of the table into a single instance, found again by its primary key. The primary key must be a single int or long column.
  */
 @Target(ElementType.TYPE)
 @Retention(RetentionPolicy.RUNTIME)
 public @interface Cacheable {
+
+	/**
+	 * Whether an instance leaves the cache once nothing else references it. Otherwise every instance ever read or saved stays in memory.
+	 */
+	boolean weak() default true;
 }